@@ -0,0 +1,323 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde.benchmark;
+
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.io.Text;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.smile.SmileFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Generated JSON records for the benchmarks. The records are generated
+ * from a fixed seed, so every run uses exactly the same data.
+ */
+public enum Corpus
+{
+    /**
+     * A few primitive columns and one field that is not in the table.
+     */
+    FLAT("messageid,messagesize,sender,spam,score,received",
+            "string,int,string,boolean,double,bigint")
+    {
+        @Override
+        protected void appendRecord(StringBuilder json, Random random)
+        {
+            json.append('{');
+            appendField(json, "messageId", randomUuid(random)).append(',');
+            appendField(json, "messageSize", random.nextInt(1000000)).append(',');
+            appendField(json, "sender", randomEmail(random)).append(',');
+            appendField(json, "spam", random.nextBoolean()).append(',');
+            appendField(json, "score", random.nextDouble() * 100).append(',');
+            appendField(json, "received", 1318000000000L + random.nextInt(100000000)).append(',');
+            appendField(json, "clientIp", randomString(random, 7, 15));
+            json.append('}');
+        }
+    },
+
+    /**
+     * Many primitive columns, with as many fields again that are not in
+     * the table.
+     */
+    WIDE(getWideColumns(), getWideTypes())
+    {
+        @Override
+        protected void appendRecord(StringBuilder json, Random random)
+        {
+            json.append('{');
+            for (int i = 0; i < WIDE_COLUMNS * 2; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                String name = (i < WIDE_COLUMNS) ? ("c" + i) : ("extra" + i);
+                switch (i % 4) {
+                    case 0:
+                        appendField(json, name, randomString(random, 5, 30));
+                        break;
+                    case 1:
+                        appendField(json, name, random.nextInt());
+                        break;
+                    case 2:
+                        appendField(json, name, random.nextDouble());
+                        break;
+                    default:
+                        appendField(json, name, random.nextLong());
+                        break;
+                }
+            }
+            json.append('}');
+        }
+    },
+
+    /**
+     * Lists of structs that contain lists of structs.
+     */
+    NESTED("messageid,messageparts",
+            "string,array<struct<extension:string,size:int,attachments:array<struct<name:string,size:bigint,tags:array<string>>>>>")
+    {
+        @Override
+        protected void appendRecord(StringBuilder json, Random random)
+        {
+            json.append('{');
+            appendField(json, "messageId", randomUuid(random)).append(",\"messageParts\":[");
+            int parts = 1 + random.nextInt(10);
+            for (int i = 0; i < parts; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                json.append('{');
+                appendField(json, "extension", randomString(random, 3, 4)).append(',');
+                appendField(json, "size", random.nextInt(10000000)).append(",\"attachments\":[");
+                int attachments = random.nextInt(5);
+                for (int j = 0; j < attachments; j++) {
+                    if (j > 0) {
+                        json.append(',');
+                    }
+                    json.append('{');
+                    appendField(json, "name", randomString(random, 5, 40)).append(',');
+                    appendField(json, "size", (long) random.nextInt(Integer.MAX_VALUE)).append(",\"tags\":[");
+                    int tags = random.nextInt(4);
+                    for (int k = 0; k < tags; k++) {
+                        if (k > 0) {
+                            json.append(',');
+                        }
+                        appendString(json, randomString(random, 3, 10));
+                    }
+                    json.append("]}");
+                }
+                json.append("]}");
+            }
+            json.append("]}");
+        }
+    },
+
+    /**
+     * A large map of strings, such as message headers.
+     */
+    MAP("messageid,headers", "string,map<string,string>")
+    {
+        @Override
+        protected void appendRecord(StringBuilder json, Random random)
+        {
+            json.append('{');
+            appendField(json, "messageId", randomUuid(random)).append(",\"headers\":{");
+            int headers = 50 + random.nextInt(100);
+            for (int i = 0; i < headers; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                appendField(json, "X-Header-" + i, randomString(random, 10, 80));
+            }
+            json.append("}}");
+        }
+    },
+
+    /**
+     * Events in the envelope format read by JsonEventSerde.
+     */
+    EVENT("uuid,host,ts,messageid,messagesize,recipients",
+            "string,string,string,string,int,array<string>")
+    {
+        @Override
+        protected void appendRecord(StringBuilder json, Random random)
+        {
+            json.append('{');
+            appendField(json, "type", "Message").append(',');
+            appendField(json, "uuid", randomUuid(random)).append(',');
+            appendField(json, "host", "mail" + random.nextInt(100) + ".example.com").append(',');
+            appendField(json, "timestamp", String.format("2011-10-%02dT%02d:%02d:%02d.%03dZ",
+                    1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60), random.nextInt(1000))).append(',');
+            json.append("\"data\":{");
+            appendField(json, "messageId", randomUuid(random)).append(',');
+            appendField(json, "messageSize", random.nextInt(1000000)).append(",\"recipients\":[");
+            int recipients = 1 + random.nextInt(5);
+            for (int i = 0; i < recipients; i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                appendString(json, randomEmail(random));
+            }
+            json.append("]}}");
+        }
+    };
+
+    private static final long SEED = 20111012;
+    private static final int WIDE_COLUMNS = 100;
+    private static final String ALPHABET = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789 -_.";
+
+    private final String columns;
+    private final String types;
+
+    private Corpus(String columns, String types)
+    {
+        this.columns = columns;
+        this.types = types;
+    }
+
+    protected abstract void appendRecord(StringBuilder json, Random random);
+
+    /**
+     * Returns the table properties for a table that reads the records.
+     */
+    public Properties getTableProperties()
+    {
+        Properties properties = new Properties();
+        properties.setProperty(Constants.LIST_COLUMNS, columns);
+        properties.setProperty(Constants.LIST_COLUMN_TYPES, types);
+        return properties;
+    }
+
+    /**
+     * Generate the records. The same count always produces the same records.
+     */
+    public List<Text> generate(int count)
+    {
+        Random random = new Random(SEED);
+        List<Text> records = new ArrayList<Text>(count);
+        StringBuilder json = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            json.setLength(0);
+            appendRecord(json, random);
+            records.add(new Text(json.toString()));
+        }
+        return records;
+    }
+
+    /**
+     * Convert JSON records to Smile, as a producer using the default Smile
+     * settings would write them. The Smile bytes are held in Text records.
+     */
+    public static List<Text> toSmile(List<Text> records)
+            throws IOException
+    {
+        JsonFactory jsonFactory = new JsonFactory();
+        SmileFactory smileFactory = new SmileFactory();
+        List<Text> smileRecords = new ArrayList<Text>(records.size());
+        for (Text record : records) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            JsonParser parser = jsonFactory.createJsonParser(record.getBytes(), 0, record.getLength());
+            JsonGenerator generator = smileFactory.createJsonGenerator(out);
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+            generator.close();
+            Text smileRecord = new Text();
+            smileRecord.set(out.toByteArray());
+            smileRecords.add(smileRecord);
+        }
+        return smileRecords;
+    }
+
+    /**
+     * Returns the total length of the records in bytes.
+     */
+    public static long getSize(List<Text> records)
+    {
+        long size = 0;
+        for (Text record : records) {
+            size += record.getLength();
+        }
+        return size;
+    }
+
+    private static String getWideColumns()
+    {
+        StringBuilder columns = new StringBuilder();
+        for (int i = 0; i < WIDE_COLUMNS; i++) {
+            if (i > 0) {
+                columns.append(',');
+            }
+            columns.append('c').append(i);
+        }
+        return columns.toString();
+    }
+
+    private static String getWideTypes()
+    {
+        String[] types = {"string", "int", "double", "bigint"};
+        StringBuilder columns = new StringBuilder();
+        for (int i = 0; i < WIDE_COLUMNS; i++) {
+            if (i > 0) {
+                columns.append(',');
+            }
+            columns.append(types[i % types.length]);
+        }
+        return columns.toString();
+    }
+
+    private static StringBuilder appendField(StringBuilder json, String name, Object value)
+    {
+        appendString(json, name).append(':');
+        if (value instanceof String) {
+            return appendString(json, (String) value);
+        }
+        return json.append(value);
+    }
+
+    private static StringBuilder appendString(StringBuilder json, String value)
+    {
+        // generated strings never need escaping
+        return json.append('"').append(value).append('"');
+    }
+
+    private static String randomString(Random random, int minLength, int maxLength)
+    {
+        int length = minLength + random.nextInt(maxLength - minLength + 1);
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+        }
+        return new String(chars);
+    }
+
+    private static String randomUuid(Random random)
+    {
+        return new UUID(random.nextLong(), random.nextLong()).toString();
+    }
+
+    private static String randomEmail(Random random)
+    {
+        return randomString(random, 3, 12).replace(' ', '.') + "@example" + random.nextInt(100) + ".com";
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the bytes of the records read by a benchmark. JMH reports the
+ * count as bytes per second next to the rows per second, so the two
+ * encodings of a corpus can be compared by size as well as by speed.
+ */
+@AuxCounters
+@State(Scope.Thread)
+public class InputBytes
+{
+    public long bytes;
+
+    @Setup(Level.Iteration)
+    public void reset()
+    {
+        bytes = 0;
+    }
+}
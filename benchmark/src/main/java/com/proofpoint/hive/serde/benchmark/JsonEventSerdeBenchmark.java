@@ -0,0 +1,112 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde.benchmark;
+
+import com.proofpoint.hive.serde.JsonEventSerde;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the rows per second of JsonEventSerde for the event corpus.
+ * Each operation processes one row, and the bytes of input read are
+ * reported as an auxiliary counter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class JsonEventSerdeBenchmark
+{
+    private static final int RECORD_COUNT = 1000;
+
+    /**
+     * The serde property to enable, or "tree" for the default parser.
+     */
+    @Param({"tree", "parse.streaming", "row.reuse"})
+    public String mode;
+
+    /**
+     * The encoding of the records: JSON text, or the same records as Smile.
+     */
+    @Param({"json", "smile"})
+    public String encoding;
+
+    private JsonEventSerde serde;
+    private Text[] records;
+    private int position;
+
+    @Setup
+    public void setup()
+            throws SerDeException, IOException
+    {
+        Properties properties = Corpus.EVENT.getTableProperties();
+        if (!mode.equals("tree")) {
+            properties.setProperty("parse.streaming", "true");
+            properties.setProperty(mode, "true");
+        }
+        serde = new JsonEventSerde();
+        serde.initialize(null, properties);
+
+        List<Text> corpusRecords = Corpus.EVENT.generate(RECORD_COUNT);
+        if (encoding.equals("smile")) {
+            corpusRecords = Corpus.toSmile(corpusRecords);
+        }
+        records = corpusRecords.toArray(new Text[corpusRecords.size()]);
+    }
+
+    @Benchmark
+    public Object deserialize(InputBytes input)
+            throws SerDeException
+    {
+        int current = position;
+        position = (current + 1 == records.length) ? 0 : current + 1;
+        input.bytes += records[current].getLength();
+        return serde.deserialize(records[current]);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .include(JsonEventSerdeBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
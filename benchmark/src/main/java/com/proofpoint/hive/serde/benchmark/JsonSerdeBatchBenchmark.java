@@ -0,0 +1,110 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde.benchmark;
+
+import com.proofpoint.hive.serde.JsonSerde;
+import com.proofpoint.hive.serde.RowBatch;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the rows per second that JsonSerde decodes into column vectors
+ * for each corpus. Batch decoding always streams into the vectors, so it
+ * does not depend on the parsing mode measured by
+ * {@link JsonSerdeBenchmark}. Each operation decodes a batch, and is scaled
+ * to rows.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class JsonSerdeBatchBenchmark
+{
+    private static final int RECORD_COUNT = 1000;
+
+    @Param({"FLAT", "WIDE", "NESTED", "MAP"})
+    public Corpus corpus;
+
+    /**
+     * The encoding of the records: JSON text, or the same records as Smile.
+     */
+    @Param({"json", "smile"})
+    public String encoding;
+
+    private JsonSerde serde;
+    private Text[] records;
+    private long recordBytes;
+    private RowBatch batch;
+
+    @Setup
+    public void setup()
+            throws SerDeException, IOException
+    {
+        serde = new JsonSerde();
+        serde.initialize(null, corpus.getTableProperties());
+
+        List<Text> corpusRecords = corpus.generate(RECORD_COUNT);
+        if (encoding.equals("smile")) {
+            corpusRecords = Corpus.toSmile(corpusRecords);
+        }
+        records = corpusRecords.toArray(new Text[corpusRecords.size()]);
+        recordBytes = Corpus.getSize(corpusRecords);
+        batch = serde.createRowBatch(records.length);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(RECORD_COUNT)
+    public RowBatch deserializeBatch(InputBytes input)
+            throws SerDeException
+    {
+        input.bytes += recordBytes;
+        serde.deserializeBatch(records, records.length, batch);
+        return batch;
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .include(JsonSerdeBatchBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
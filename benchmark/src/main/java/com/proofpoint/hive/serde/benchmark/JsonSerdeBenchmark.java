@@ -0,0 +1,127 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde.benchmark;
+
+import com.proofpoint.hive.serde.JsonSerde;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.io.Text;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the rows per second of JsonSerde for each corpus and parsing
+ * mode. Each operation processes one row. The bytes of input read are
+ * reported as an auxiliary counter. Run with the GC profiler (-prof gc) to
+ * report the bytes allocated per row. Lazy parsing does not support Smile,
+ * so the lazy modes fail with the Smile encoding.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class JsonSerdeBenchmark
+{
+    private static final int RECORD_COUNT = 1000;
+
+    @Param({"FLAT", "WIDE", "NESTED", "MAP"})
+    public Corpus corpus;
+
+    /**
+     * The serde property to enable, or "tree" for the default parser. The
+     * streaming parser is also enabled for row reuse, and lazy parsing for
+     * lazy strings.
+     */
+    @Param({"tree", "parse.streaming", "row.reuse", "parse.lazy", "strings.lazy"})
+    public String mode;
+
+    /**
+     * The encoding of the records: JSON text, or the same records as Smile.
+     */
+    @Param({"json", "smile"})
+    public String encoding;
+
+    private JsonSerde serde;
+    private Text[] records;
+    private int position;
+
+    @Setup
+    public void setup()
+            throws SerDeException, IOException
+    {
+        Properties properties = corpus.getTableProperties();
+        if (mode.equals("parse.streaming") || mode.equals("row.reuse")) {
+            properties.setProperty("parse.streaming", "true");
+        }
+        else if (mode.equals("strings.lazy")) {
+            properties.setProperty("parse.lazy", "true");
+        }
+        if (!mode.equals("tree")) {
+            properties.setProperty(mode, "true");
+        }
+        if (properties.containsKey("parse.lazy") && encoding.equals("smile")) {
+            throw new IllegalStateException("Smile records are not supported with lazy parsing");
+        }
+        serde = new JsonSerde();
+        serde.initialize(null, properties);
+
+        List<Text> corpusRecords = corpus.generate(RECORD_COUNT);
+        if (encoding.equals("smile")) {
+            corpusRecords = Corpus.toSmile(corpusRecords);
+        }
+        records = corpusRecords.toArray(new Text[corpusRecords.size()]);
+    }
+
+    @Benchmark
+    public Object deserialize(InputBytes input)
+            throws SerDeException
+    {
+        int current = position;
+        position = (current + 1 == records.length) ? 0 : current + 1;
+        input.bytes += records[current].getLength();
+        return serde.deserialize(records[current]);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .include(JsonSerdeBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde.benchmark;
+
+import com.proofpoint.hive.serde.JsonSerde;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the rows per second that JsonSerde serializes for each corpus.
+ * The rows are standard Java objects, so serialization does not depend on
+ * the parsing mode or encoding measured by {@link JsonSerdeBenchmark}, and
+ * runs once per corpus.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class JsonSerdeSerializeBenchmark
+{
+    private static final int RECORD_COUNT = 1000;
+
+    @Param({"FLAT", "WIDE", "NESTED", "MAP"})
+    public Corpus corpus;
+
+    private JsonSerde serde;
+    private Object[] rows;
+    private ObjectInspector rowInspector;
+    private int position;
+
+    @Setup
+    public void setup()
+            throws SerDeException
+    {
+        serde = new JsonSerde();
+        serde.initialize(null, corpus.getTableProperties());
+        rowInspector = serde.getObjectInspector();
+
+        List<Text> records = corpus.generate(RECORD_COUNT);
+        rows = new Object[records.size()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = serde.deserialize(records.get(i));
+        }
+    }
+
+    @Benchmark
+    public Writable serialize()
+            throws SerDeException
+    {
+        int current = position;
+        position = (current + 1 == rows.length) ? 0 : current + 1;
+        return serde.serialize(rows[current], rowInspector);
+    }
+
+    public static void main(String[] args)
+            throws RunnerException
+    {
+        Options options = new OptionsBuilder()
+                .include(JsonSerdeSerializeBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -15,92 +15,329 @@
  */
 package com.proofpoint.hive.serde;
 
-import java.util.Collection;
-import java.util.LinkedHashMap;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
+/**
+ * A map with case-insensitive string keys that keeps insertion order.
+ * Keys are hashed and compared character by character in lower case, so
+ * lookups do not create lower case copies of the key. Entries are stored
+ * in arrays, which are searched linearly for small maps and through an
+ * open-addressing hash table for larger ones. The keys of the map, as seen
+ * when iterating, are the lower case forms of the keys that were added.
+ */
 public class CaseInsensitiveMap<V>
-        implements Map<String, V>
+        extends AbstractMap<String, V>
 {
-    Map<String, V> map = new LinkedHashMap<String, V>();
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int MAX_LINEAR_SIZE = 8;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    // created on first iteration, since lookups do not need them
+    private String[] lowerCaseKeys;
+    private int size;
+
+    // entries are stored as index + 1 so that zero is empty
+    private int[] table;
+    private int mask;
+
+    private EntrySet entrySet;
 
     @Override
     public int size()
     {
-        return map.size();
+        return size;
     }
 
     @Override
     public boolean isEmpty()
     {
-        return map.isEmpty();
+        return size == 0;
     }
 
     @Override
     public boolean containsKey(Object key)
     {
-        return map.containsKey(convertKey(key));
+        return indexOf(key) >= 0;
     }
 
     @Override
-    public boolean containsValue(Object value)
+    @SuppressWarnings("unchecked")
+    public V get(Object key)
     {
-        return map.containsValue(value);
+        int index = indexOf(key);
+        return (index < 0) ? null : (V) values[index];
     }
 
     @Override
-    public V get(Object key)
+    @SuppressWarnings("unchecked")
+    public V put(String key, V value)
+    {
+        int hash = ColumnNameMap.hash(key);
+        int index = indexOf(key, hash);
+        if (index >= 0) {
+            V previous = (V) values[index];
+            values[index] = value;
+            return previous;
+        }
+        add(key, null, value, hash);
+        return null;
+    }
+
+    /**
+     * Put the value unless the map already has a non-null value for a key
+     * that differs from this key only in case. The JSON tree keeps the last
+     * value for keys that are exactly duplicated, so those are replaced.
+     *
+     * @param lowerCaseKey the lower case form of the key if known, or null
+     * @return false if the key conflicts, in which case the value is still
+     * replaced
+     */
+    boolean putUnlessCaseConflict(String key, String lowerCaseKey, V value)
     {
-        return map.get(convertKey(key));
+        int hash = ColumnNameMap.hash(key);
+        int index = indexOf(key, hash);
+        if (index >= 0) {
+            boolean conflict = (values[index] != null) && !keys[index].equals(key);
+            values[index] = value;
+            return !conflict;
+        }
+        add(key, lowerCaseKey, value, hash);
+        return true;
+    }
+
+    private void add(String key, String lowerCaseKey, V value, int hash)
+    {
+        if (size == keys.length) {
+            int capacity = size * 2;
+            keys = Arrays.copyOf(keys, capacity);
+            values = Arrays.copyOf(values, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+        }
+        if (lowerCaseKey != null) {
+            ensureLowerCaseKeys();
+            lowerCaseKeys[size] = lowerCaseKey;
+        }
+        keys[size] = key;
+        values[size] = value;
+        hashes[size] = hash;
+        size++;
+
+        if (table != null) {
+            if ((size * 2) > table.length) {
+                rebuildTable();
+            }
+            else {
+                table[findSlot(key, hash)] = size;
+            }
+        }
+        else if (size > MAX_LINEAR_SIZE) {
+            rebuildTable();
+        }
     }
 
     @Override
+    @SuppressWarnings("unchecked")
     public V remove(Object key)
     {
-        return map.remove(convertKey(key));
+        int index = indexOf(key);
+        if (index < 0) {
+            return null;
+        }
+        V previous = (V) values[index];
+        removeIndex(index);
+        return previous;
     }
 
     @Override
     public void clear()
     {
-        map.clear();
+        // keep the arrays so that a reused map does not allocate
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        if (lowerCaseKeys != null) {
+            Arrays.fill(lowerCaseKeys, 0, Math.min(size, lowerCaseKeys.length), null);
+        }
+        size = 0;
+        if (table != null) {
+            Arrays.fill(table, 0);
+        }
     }
 
     @Override
-    public Set<String> keySet()
+    public Set<Entry<String, V>> entrySet()
     {
-        return map.keySet();
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
     }
 
-    @Override
-    public Collection<V> values()
+    private int indexOf(Object key)
     {
-        return map.values();
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        String name = (String) key;
+        return indexOf(name, ColumnNameMap.hash(name));
     }
 
-    @Override
-    public Set<Entry<String, V>> entrySet()
+    private int indexOf(String key, int hash)
     {
-        return map.entrySet();
+        if (table == null) {
+            for (int i = 0; i < size; i++) {
+                if ((hashes[i] == hash) && equalsIgnoreCase(keys[i], key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        return table[findSlot(key, hash)] - 1;
     }
 
-    @Override
-    public void putAll(Map<? extends String, ? extends V> m)
+    private int findSlot(String key, int hash)
     {
-        for (Entry<? extends String, ? extends V> entry : m.entrySet()) {
-            put(entry.getKey(), entry.getValue());
+        int slot = hash & mask;
+        while (true) {
+            int entry = table[slot];
+            if ((entry == 0) || ((hashes[entry - 1] == hash) && equalsIgnoreCase(keys[entry - 1], key))) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
         }
     }
 
-    @Override
-    public V put(String key, V value)
+    private void rebuildTable()
     {
-        return map.put(convertKey(key), value);
+        int tableSize = Integer.highestOneBit(Math.max(size, 1)) * 4;
+        if ((table == null) || (table.length != tableSize)) {
+            table = new int[tableSize];
+            mask = tableSize - 1;
+        }
+        else {
+            Arrays.fill(table, 0);
+        }
+        for (int i = 0; i < size; i++) {
+            table[findSlot(keys[i], hashes[i])] = i + 1;
+        }
+    }
+
+    private void removeIndex(int index)
+    {
+        int moved = size - index - 1;
+        System.arraycopy(keys, index + 1, keys, index, moved);
+        System.arraycopy(values, index + 1, values, index, moved);
+        System.arraycopy(hashes, index + 1, hashes, index, moved);
+        lowerCaseKeys = null;
+        size--;
+        keys[size] = null;
+        values[size] = null;
+        if (table != null) {
+            rebuildTable();
+        }
+    }
+
+    private void ensureLowerCaseKeys()
+    {
+        if (lowerCaseKeys == null) {
+            lowerCaseKeys = new String[keys.length];
+        }
+        else if (lowerCaseKeys.length < keys.length) {
+            lowerCaseKeys = Arrays.copyOf(lowerCaseKeys, keys.length);
+        }
+    }
+
+    private String getLowerCaseKey(int index)
+    {
+        ensureLowerCaseKeys();
+        String key = lowerCaseKeys[index];
+        if (key == null) {
+            key = ColumnNameMap.toLowerCase(keys[index]);
+            lowerCaseKeys[index] = key;
+        }
+        return key;
+    }
+
+    private static boolean equalsIgnoreCase(String a, String b)
+    {
+        if (a == b) {
+            return true;
+        }
+        if (a.length() != b.length()) {
+            return false;
+        }
+        for (int i = 0; i < a.length(); i++) {
+            char x = a.charAt(i);
+            char y = b.charAt(i);
+            if ((x != y) && (Character.toLowerCase(x) != Character.toLowerCase(y))) {
+                return false;
+            }
+        }
+        return true;
     }
 
-    private static String convertKey(Object key)
+    private class EntrySet
+            extends AbstractSet<Entry<String, V>>
     {
-        return ((String) key).toLowerCase();
+        @Override
+        public int size()
+        {
+            return size;
+        }
+
+        @Override
+        public void clear()
+        {
+            CaseInsensitiveMap.this.clear();
+        }
+
+        @Override
+        public Iterator<Entry<String, V>> iterator()
+        {
+            return new EntryIterator();
+        }
+    }
+
+    private class EntryIterator
+            implements Iterator<Entry<String, V>>
+    {
+        private int next;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext()
+        {
+            return next < size;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Entry<String, V> next()
+        {
+            if (next >= size) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next++;
+            return new SimpleImmutableEntry<String, V>(getLowerCaseKey(last), (V) values[last]);
+        }
+
+        @Override
+        public void remove()
+        {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeIndex(last);
+            next = last;
+            last = -1;
+        }
     }
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+/**
+ * Maps columns to paths of nested JSON fields, such as
+ * {@code envelope.from.domain}. The paths are compiled into a struct type
+ * that only contains the fields along the paths, with paths that share a
+ * prefix sharing the struct for it. Decoding that type descends into the
+ * mapped fields and skips everything else in a single pass, and the
+ * columns are then copied out of the decoded structs.
+ */
+final class ColumnMapping
+{
+    private final StructTypeInfo decodedTypeInfo;
+    private final int[][] paths;
+    private final boolean[] mapped;
+
+    private ColumnMapping(StructTypeInfo decodedTypeInfo, int[][] paths, boolean[] mapped)
+    {
+        this.decodedTypeInfo = decodedTypeInfo;
+        this.paths = paths;
+        this.mapped = mapped;
+    }
+
+    /**
+     * Compile the mappings of column names to dotted paths. Columns that
+     * are not mapped are read from the top level field with their name.
+     */
+    public static ColumnMapping create(StructTypeInfo rootTypeInfo, Map<String, String> mappings)
+            throws SerDeException
+    {
+        List<String> columnNames = rootTypeInfo.getAllStructFieldNames();
+        List<TypeInfo> columnTypes = rootTypeInfo.getAllStructFieldTypeInfos();
+
+        ColumnNameMap columns = new ColumnNameMap(columnNames);
+        for (String column : mappings.keySet()) {
+            if (columns.get(column) < 0) {
+                throw new SerDeException("mapping for unknown column: " + column);
+            }
+        }
+
+        Node root = new Node(null);
+        int[][] paths = new int[columnNames.size()][];
+        boolean[] mapped = new boolean[columnNames.size()];
+        for (int i = 0; i < paths.length; i++) {
+            String column = columns.getColumnName(i);
+            String path = mappings.get(column);
+            mapped[i] = (path != null);
+            String[] names = (path == null) ? new String[] {column} : ColumnNameMap.toLowerCase(path.trim()).split("\\.", -1);
+
+            paths[i] = new int[names.length];
+            Node node = root;
+            for (int depth = 0; depth < names.length; depth++) {
+                String name = names[depth];
+                if (name.isEmpty()) {
+                    throw new SerDeException(format("invalid mapping for column %s: %s", column, path));
+                }
+                Node child = node.children.get(name);
+                if (child == null) {
+                    child = new Node(column);
+                    node.children.put(name, child);
+                }
+                else if ((depth == names.length - 1) || (child.type != null)) {
+                    throw new SerDeException(format("mapping for column %s conflicts with column %s", column, child.column));
+                }
+                paths[i][depth] = indexOf(node.children, name);
+                node = child;
+            }
+            node.type = columnTypes.get(i);
+        }
+        return new ColumnMapping((StructTypeInfo) root.getTypeInfo(), paths, mapped);
+    }
+
+    private static int indexOf(Map<String, Node> children, String name)
+    {
+        int index = 0;
+        for (String childName : children.keySet()) {
+            if (childName.equals(name)) {
+                return index;
+            }
+            index++;
+        }
+        throw new AssertionError("missing child: " + name);
+    }
+
+    /**
+     * Returns the type to decode the records with.
+     */
+    public StructTypeInfo getDecodedTypeInfo()
+    {
+        return decodedTypeInfo;
+    }
+
+    /**
+     * Returns the top level fields of the decoded type that are needed for
+     * the projected columns, or null if all fields are needed.
+     */
+    public boolean[] getDecodedProjection(boolean[] projected)
+    {
+        if (projected == null) {
+            return null;
+        }
+        boolean[] decoded = new boolean[decodedTypeInfo.getAllStructFieldNames().size()];
+        for (int i = 0; i < paths.length; i++) {
+            if (projected[i]) {
+                decoded[paths[i][0]] = true;
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * Returns true if the column is read from a path rather than the top
+     * level field with its name.
+     */
+    public boolean isMapped(int column)
+    {
+        return mapped[column];
+    }
+
+    /**
+     * Copy the columns out of the decoded struct into the row. A column is
+     * null if any struct along its path is null.
+     *
+     * @param row the previous row, which is reused, or null
+     */
+    public Object[] extractColumns(Object[] decoded, Object[] row)
+    {
+        if (row == null) {
+            row = new Object[paths.length];
+        }
+        for (int i = 0; i < paths.length; i++) {
+            int[] path = paths[i];
+            Object value = decoded;
+            for (int depth = 0; (depth < path.length) && (value != null); depth++) {
+                value = ((Object[]) value)[path[depth]];
+            }
+            row[i] = value;
+        }
+        return row;
+    }
+
+    private static class Node
+    {
+        private final String column;
+        private final Map<String, Node> children = new LinkedHashMap<String, Node>();
+        private TypeInfo type;
+
+        private Node(String column)
+        {
+            this.column = column;
+        }
+
+        private TypeInfo getTypeInfo()
+        {
+            if (type != null) {
+                return type;
+            }
+            List<TypeInfo> types = new ArrayList<TypeInfo>();
+            for (Node child : children.values()) {
+                types.add(child.getTypeInfo());
+            }
+            return TypeInfoFactory.getStructTypeInfo(new ArrayList<String>(children.keySet()), types);
+        }
+    }
+}
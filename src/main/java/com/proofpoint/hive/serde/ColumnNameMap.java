@@ -15,65 +15,113 @@
  */
 package com.proofpoint.hive.serde;
 
-import org.apache.hadoop.hive.serde2.SerDeException;
-import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
-import org.apache.hadoop.hive.serde2.typeinfo.ListTypeInfo;
-import org.apache.hadoop.hive.serde2.typeinfo.MapTypeInfo;
-import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
-import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
-
-import java.util.HashMap;
-import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
 
+/**
+ * Case-insensitive lookup of column names. Names are compared character by
+ * character against the lower case column names, so looking up a name does
+ * not create a lower case copy of it.
+ */
 public class ColumnNameMap
 {
-    // use identity because equals is very slow and TypeInfoFactory guarantees only one instance
-    Map<StructTypeInfo, Map<String, Integer>> types = new IdentityHashMap<StructTypeInfo, Map<String, Integer>>();
+    private final String[] columnNames;
+    private final int[] table;
+    private final int mask;
+
+    public ColumnNameMap(List<String> columnNames)
+    {
+        this.columnNames = new String[columnNames.size()];
+        int size = Integer.highestOneBit(Math.max(columnNames.size(), 1)) * 4;
+        table = new int[size];
+        mask = size - 1;
+
+        for (int i = 0; i < columnNames.size(); i++) {
+            String name = toLowerCase(columnNames.get(i));
+            this.columnNames[i] = name;
+            int slot = findSlot(name);
+            // entries are stored as index + 1 so that zero is empty
+            table[slot] = i + 1;
+        }
+    }
 
-    public ColumnNameMap(StructTypeInfo typeInfo)
+    public int size()
     {
-        process(typeInfo);
+        return columnNames.length;
     }
 
-    public Map<String, Integer> getColumnNames(StructTypeInfo typeInfo)
-            throws SerDeException
+    public String getColumnName(int index)
     {
-        Map<String, Integer> map = types.get(typeInfo);
-        if (map == null) {
-            throw new SerDeException("no column name map for type: "  + typeInfo);
-        }
-        return map;
+        return columnNames[index];
     }
 
-    private void process(TypeInfo typeInfo)
+    /**
+     * Returns the index of the column matching the name, or -1 if no column
+     * matches.
+     */
+    public int get(String name)
     {
-        if (typeInfo.getCategory() == ObjectInspector.Category.LIST) {
-            process(((ListTypeInfo) typeInfo).getListElementTypeInfo());
-        }
-        else if (typeInfo.getCategory() == ObjectInspector.Category.MAP) {
-            process(((MapTypeInfo) typeInfo).getMapValueTypeInfo());
+        int entry = table[findSlot(name)];
+        return entry - 1;
+    }
+
+    private int findSlot(String name)
+    {
+        int slot = hash(name) & mask;
+        while (true) {
+            int entry = table[slot];
+            if ((entry == 0) || equalsLowerCase(columnNames[entry - 1], name)) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
         }
-        else if (typeInfo.getCategory() == ObjectInspector.Category.STRUCT) {
-            process((StructTypeInfo) typeInfo);
+    }
+
+    /**
+     * Returns the hash code of the lower case form of the name.
+     */
+    static int hash(String name)
+    {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            hash = (31 * hash) + Character.toLowerCase(name.charAt(i));
         }
+        return hash ^ (hash >>> 16);
     }
 
-    private void process(StructTypeInfo structTypeInfo)
+    /**
+     * Returns true if the name converted to lower case equals the lower
+     * case string.
+     */
+    static boolean equalsLowerCase(String lowerCase, String name)
     {
-        types.put(structTypeInfo, mapColumns(structTypeInfo.getAllStructFieldNames()));
-        for (TypeInfo fieldTypeInfo : structTypeInfo.getAllStructFieldTypeInfos()) {
-            process(fieldTypeInfo);
+        if (lowerCase.length() != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (lowerCase.charAt(i) != Character.toLowerCase(name.charAt(i))) {
+                return false;
+            }
         }
+        return true;
     }
 
-    private static Map<String, Integer> mapColumns(List<String> columnNames)
+    /**
+     * Returns the name with each character converted to lower case, or the
+     * name itself if it is already lower case.
+     */
+    static String toLowerCase(String name)
     {
-        Map<String, Integer> map = new HashMap<String, Integer>();
-        for (int i = 0; i < columnNames.size(); i++) {
-            map.put(columnNames.get(i).toLowerCase(), i);
+        int first = 0;
+        while ((first < name.length()) && (Character.toLowerCase(name.charAt(first)) == name.charAt(first))) {
+            first++;
+        }
+        if (first == name.length()) {
+            return name;
+        }
+        char[] chars = name.toCharArray();
+        for (int i = first; i < chars.length; i++) {
+            chars[i] = Character.toLowerCase(chars[i]);
         }
-        return map;
+        return new String(chars);
     }
 }
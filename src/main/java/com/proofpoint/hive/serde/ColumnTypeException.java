@@ -0,0 +1,43 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+
+/**
+ * A JSON value that does not have the type of its column.
+ */
+public class ColumnTypeException
+        extends SerDeException
+{
+    private static final long serialVersionUID = 1L;
+
+    private final String columnName;
+
+    public ColumnTypeException(String columnName, String message)
+    {
+        super(message);
+        this.columnName = columnName;
+    }
+
+    /**
+     * Returns the name of the column, with nested columns named with dots.
+     */
+    public String getColumnName()
+    {
+        return columnName;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+
+import java.util.Arrays;
+
+import static org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
+
+/**
+ * The values of one column for the rows of a {@link RowBatch}. The arrays
+ * are public so that consumers can process a column in a tight loop. The
+ * value of a row is undefined if the row is null.
+ */
+public abstract class ColumnVector
+{
+    public final boolean[] isNull;
+    public boolean noNulls = true;
+
+    protected ColumnVector(int capacity)
+    {
+        isNull = new boolean[capacity];
+    }
+
+    /**
+     * Create the vector type for a column: a {@link LongColumnVector} for
+     * boolean and integer columns, a {@link DoubleColumnVector} for float
+     * and double columns, a {@link BytesColumnVector} for string columns
+     * and an {@link ObjectColumnVector} for everything else.
+     */
+    public static ColumnVector create(TypeInfo typeInfo, int capacity)
+    {
+        if (typeInfo.getCategory() != Category.PRIMITIVE) {
+            return new ObjectColumnVector(capacity);
+        }
+        switch (((PrimitiveTypeInfo) typeInfo).getPrimitiveCategory()) {
+            case BOOLEAN:
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return new LongColumnVector(capacity);
+            case FLOAT:
+            case DOUBLE:
+                return new DoubleColumnVector(capacity);
+            case STRING:
+                return new BytesColumnVector(capacity);
+            default:
+                return new ObjectColumnVector(capacity);
+        }
+    }
+
+    public void setNull(int row)
+    {
+        isNull[row] = true;
+        noNulls = false;
+    }
+
+    public void reset()
+    {
+        Arrays.fill(isNull, false);
+        noNulls = true;
+    }
+
+    /**
+     * Boolean and integer values. Booleans are stored as zero or one.
+     */
+    public static class LongColumnVector
+            extends ColumnVector
+    {
+        public final long[] vector;
+
+        public LongColumnVector(int capacity)
+        {
+            super(capacity);
+            vector = new long[capacity];
+        }
+    }
+
+    public static class DoubleColumnVector
+            extends ColumnVector
+    {
+        public final double[] vector;
+
+        public DoubleColumnVector(int capacity)
+        {
+            super(capacity);
+            vector = new double[capacity];
+        }
+    }
+
+    /**
+     * UTF-8 string values. A value is the range of {@code vector[row]}
+     * starting at {@code start[row]} with {@code length[row]} bytes. Strings
+     * without escapes reference the bytes of the input record, so the
+     * records must not be modified while the batch is in use.
+     */
+    public static class BytesColumnVector
+            extends ColumnVector
+    {
+        public final byte[][] vector;
+        public final int[] start;
+        public final int[] length;
+
+        public BytesColumnVector(int capacity)
+        {
+            super(capacity);
+            vector = new byte[capacity][];
+            start = new int[capacity];
+            length = new int[capacity];
+        }
+
+        public void setRef(int row, byte[] bytes, int start, int length)
+        {
+            vector[row] = bytes;
+            this.start[row] = start;
+            this.length[row] = length;
+        }
+
+        @Override
+        public void setNull(int row)
+        {
+            super.setNull(row);
+            vector[row] = null;
+        }
+
+        /**
+         * Returns the value of the row as a string, or null if the row is
+         * null.
+         */
+        public String getString(int row)
+        {
+            if (isNull[row]) {
+                return null;
+            }
+            return new String(vector[row], start[row], length[row], LazyJsonString.UTF_8);
+        }
+    }
+
+    /**
+     * Values of columns that are not primitives, as standard Java objects:
+     * lists, maps and object arrays for structs.
+     */
+    public static class ObjectColumnVector
+            extends ColumnVector
+    {
+        public final Object[] vector;
+
+        public ObjectColumnVector(int capacity)
+        {
+            super(capacity);
+            vector = new Object[capacity];
+        }
+
+        @Override
+        public void setNull(int row)
+        {
+            super.setNull(row);
+            vector[row] = null;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts the rows, bytes and errors of one serde, and optionally times the
+ * parse and build phases of a sample of the rows. The counts are also
+ * added to the totals for the JVM in {@link JsonSerdeMetrics}. Instances
+ * are not thread safe.
+ */
+public class DecodeMetrics
+{
+    private final int timingSampleInterval;
+    private int rowsUntilSample;
+    private long rows;
+    private long bytes;
+    private long filteredRows;
+    private long parseErrors;
+    private long typeErrors;
+    private long otherErrors;
+    private long ignoredErrors;
+    private final Map<String, Long> typeErrorsByColumn = new HashMap<String, Long>();
+    private long sampledRows;
+    private long parseNanos;
+    private long buildNanos;
+
+    /**
+     * @param timingSampleInterval time one in this many rows, or zero to
+     * disable timing
+     */
+    DecodeMetrics(int timingSampleInterval)
+    {
+        this.timingSampleInterval = timingSampleInterval;
+        rowsUntilSample = timingSampleInterval;
+    }
+
+    void addRow(int length)
+    {
+        rows++;
+        bytes += length;
+        JsonSerdeMetrics.getInstance().addRow(length);
+    }
+
+    void addFilteredRow()
+    {
+        filteredRows++;
+        JsonSerdeMetrics.getInstance().addFilteredRow();
+    }
+
+    /**
+     * Returns true if the current row should be timed.
+     */
+    boolean isSampled()
+    {
+        if (timingSampleInterval == 0) {
+            return false;
+        }
+        rowsUntilSample--;
+        if (rowsUntilSample > 0) {
+            return false;
+        }
+        rowsUntilSample = timingSampleInterval;
+        return true;
+    }
+
+    void addTiming(long parseNanos, long buildNanos)
+    {
+        sampledRows++;
+        this.parseNanos += parseNanos;
+        this.buildNanos += buildNanos;
+        JsonSerdeMetrics.getInstance().addTiming(parseNanos, buildNanos);
+    }
+
+    /**
+     * Count the error by category: invalid JSON, a value with the wrong
+     * type for its column, or anything else.
+     */
+    void addError(SerDeException e, boolean ignored)
+    {
+        JsonSerdeMetrics global = JsonSerdeMetrics.getInstance();
+        if (e instanceof ColumnTypeException) {
+            String columnName = ((ColumnTypeException) e).getColumnName();
+            typeErrors++;
+            Long count = typeErrorsByColumn.get(columnName);
+            typeErrorsByColumn.put(columnName, (count == null) ? 1 : (count + 1));
+            global.addTypeError(columnName);
+        }
+        else if (e.getCause() instanceof IOException) {
+            parseErrors++;
+            global.addParseError();
+        }
+        else {
+            otherErrors++;
+            global.addOtherError();
+        }
+        if (ignored) {
+            ignoredErrors++;
+            global.addIgnoredError();
+        }
+    }
+
+    public long getRows()
+    {
+        return rows;
+    }
+
+    public long getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of rows that the prefilter rejected.
+     */
+    public long getFilteredRows()
+    {
+        return filteredRows;
+    }
+
+    public long getParseErrors()
+    {
+        return parseErrors;
+    }
+
+    public long getTypeErrors()
+    {
+        return typeErrors;
+    }
+
+    /**
+     * Returns the number of type errors for each column that had any.
+     */
+    public Map<String, Long> getTypeErrorsByColumn()
+    {
+        return new HashMap<String, Long>(typeErrorsByColumn);
+    }
+
+    public long getOtherErrors()
+    {
+        return otherErrors;
+    }
+
+    /**
+     * Returns the number of errors that were ignored because the table
+     * ignores errors, which is included in the other error counts.
+     */
+    public long getIgnoredErrors()
+    {
+        return ignoredErrors;
+    }
+
+    /**
+     * Returns the number of timed rows. Sampled rows that fail are not
+     * timed.
+     */
+    public long getSampledRows()
+    {
+        return sampledRows;
+    }
+
+    /**
+     * Returns the time spent parsing the sampled rows into JSON trees,
+     * which is only separate from building when rows are built from trees.
+     */
+    public long getParseNanos()
+    {
+        return parseNanos;
+    }
+
+    public long getBuildNanos()
+    {
+        return buildNanos;
+    }
+}
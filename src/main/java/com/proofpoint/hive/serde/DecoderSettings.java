@@ -0,0 +1,135 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Table level options that affect how the decoders build column values.
+ */
+class DecoderSettings
+{
+    private JsonSchema schema;
+    private boolean writable;
+    private boolean lazyStrings;
+    private RecordLimits limits;
+    private final Map<String, StringInternCache> internCaches = new HashMap<String, StringInternCache>();
+    private final Map<String, StringInternCache> keyInternCaches = new HashMap<String, StringInternCache>();
+
+    /**
+     * Returns the field name map for a struct, shared with other serdes
+     * using the same schema.
+     */
+    public ColumnNameMap getColumnNameMap(StructTypeInfo typeInfo)
+    {
+        if (schema == null) {
+            return new ColumnNameMap(typeInfo.getAllStructFieldNames());
+        }
+        return schema.getColumnNameMap(typeInfo);
+    }
+
+    public DecoderSettings setSchema(JsonSchema schema)
+    {
+        this.schema = schema;
+        return this;
+    }
+
+    /**
+     * Returns true if primitives are decoded into reusable Writable objects
+     * rather than Java objects.
+     */
+    public boolean isWritable()
+    {
+        return writable;
+    }
+
+    public DecoderSettings setWritable(boolean writable)
+    {
+        this.writable = writable;
+        return this;
+    }
+
+    /**
+     * Returns true if lazily parsed strings reference the input bytes
+     * rather than being decoded to Java strings.
+     */
+    public boolean isLazyStrings()
+    {
+        return lazyStrings;
+    }
+
+    public DecoderSettings setLazyStrings(boolean lazyStrings)
+    {
+        this.lazyStrings = lazyStrings;
+        return this;
+    }
+
+    /**
+     * Returns the structure limits that the decoders check as they read a
+     * record, or null if there are none.
+     */
+    public RecordLimits getLimits()
+    {
+        return limits;
+    }
+
+    public DecoderSettings setLimits(RecordLimits limits)
+    {
+        this.limits = ((limits == null) || !limits.hasStructureLimits()) ? null : limits;
+        return this;
+    }
+
+    /**
+     * Returns the intern cache for the column, or null if the values of
+     * the column are not interned. Nested columns are named with dots,
+     * such as {@code messageparts.extension}.
+     */
+    public StringInternCache getInternCache(String columnName)
+    {
+        if (columnName == null) {
+            return null;
+        }
+        return internCaches.get(ColumnNameMap.toLowerCase(columnName));
+    }
+
+    /**
+     * Returns the intern cache for the keys of a map column, or null if
+     * the column is not interned. Keys have their own cache so that they
+     * do not evict the values of the map.
+     */
+    public StringInternCache getKeyInternCache(String columnName)
+    {
+        if (columnName == null) {
+            return null;
+        }
+        return keyInternCaches.get(ColumnNameMap.toLowerCase(columnName));
+    }
+
+    public DecoderSettings setInternedColumns(Iterable<String> columnNames)
+    {
+        internCaches.clear();
+        keyInternCaches.clear();
+        for (String columnName : columnNames) {
+            String name = ColumnNameMap.toLowerCase(columnName.trim());
+            internCaches.put(name, new StringInternCache());
+            keyInternCaches.put(name, new StringInternCache());
+        }
+        return this;
+    }
+}
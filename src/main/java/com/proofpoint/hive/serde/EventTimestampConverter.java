@@ -0,0 +1,130 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+
+import static com.proofpoint.hive.serde.JsonEventSerde.HIVE_FORMATTER;
+import static com.proofpoint.hive.serde.JsonEventSerde.ISO_FORMATTER;
+
+/**
+ * Converts event timestamps in ISO-8601 format to the Hive timestamp
+ * format. Timestamps of the form {@code yyyy-MM-ddTHH:mm:ss.SSSZ} are
+ * already in UTC, so the result is the date and time of the input with
+ * the milliseconds removed. These are validated and converted directly,
+ * and the result for the most recent second is cached, since consecutive
+ * events usually share it. All other timestamps are parsed by Joda.
+ * Instances are not thread safe.
+ */
+class EventTimestampConverter
+{
+    private static final int SECONDS_LENGTH = "yyyy-MM-ddTHH:mm:ss".length();
+    private static final int LENGTH = "yyyy-MM-ddTHH:mm:ss.SSSZ".length();
+
+    private String cachedTimestamp;
+    private String cachedResult;
+
+    public String toHiveTimestamp(String timestamp)
+            throws SerDeException
+    {
+        if (timestamp.length() == LENGTH && isValidMillis(timestamp)) {
+            String cached = cachedTimestamp;
+            if ((cached != null) && timestamp.regionMatches(0, cached, 0, SECONDS_LENGTH)) {
+                return cachedResult;
+            }
+            if (isValidSeconds(timestamp)) {
+                String result = timestamp.substring(0, 10) + ' ' + timestamp.substring(11, SECONDS_LENGTH);
+                cachedTimestamp = timestamp;
+                cachedResult = result;
+                return result;
+            }
+        }
+        return HIVE_FORMATTER.print(parseMillis(timestamp));
+    }
+
+    private static long parseMillis(String timestamp)
+            throws SerDeException
+    {
+        try {
+            return ISO_FORMATTER.parseMillis(timestamp);
+        }
+        catch (Exception e) {
+            throw new SerDeException("invalid timestamp: " + timestamp);
+        }
+    }
+
+    private static boolean isValidMillis(String s)
+    {
+        return (s.charAt(19) == '.') && isDigit(s, 20) && isDigit(s, 21) && isDigit(s, 22) && (s.charAt(23) == 'Z');
+    }
+
+    private static boolean isValidSeconds(String s)
+    {
+        if ((s.charAt(4) != '-') || (s.charAt(7) != '-') || (s.charAt(10) != 'T') || (s.charAt(13) != ':') || (s.charAt(16) != ':')) {
+            return false;
+        }
+        int year = getNumber(s, 0, 4);
+        int month = getNumber(s, 5, 2);
+        int day = getNumber(s, 8, 2);
+        int hour = getNumber(s, 11, 2);
+        int minute = getNumber(s, 14, 2);
+        int second = getNumber(s, 17, 2);
+        return (year >= 0) &&
+                (month >= 1) && (month <= 12) &&
+                (day >= 1) && (day <= getDaysInMonth(year, month)) &&
+                (hour >= 0) && (hour <= 23) &&
+                (minute >= 0) && (minute <= 59) &&
+                (second >= 0) && (second <= 59);
+    }
+
+    /**
+     * Returns the decimal number at the position, or -1 if any of the
+     * characters is not a digit.
+     */
+    private static int getNumber(String s, int start, int length)
+    {
+        int value = 0;
+        for (int i = start; i < start + length; i++) {
+            if (!isDigit(s, i)) {
+                return -1;
+            }
+            value = (value * 10) + (s.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(String s, int index)
+    {
+        char c = s.charAt(index);
+        return (c >= '0') && (c <= '9');
+    }
+
+    private static int getDaysInMonth(int year, int month)
+    {
+        switch (month) {
+            case 2:
+                boolean leap = ((year % 4) == 0) && (((year % 100) != 0) || ((year % 400) == 0));
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A comparison of a column with a literal, taken from the text of a filter
+ * that Hive pushed down, that is used to skip blocks of a
+ * {@link JsonIndex} whose values cannot match.
+ */
+class IndexPredicate
+{
+    // a comparison such as: ts >= '2011-10-12 00:00:00' or size < 100
+    private static final Pattern COMPARISON = Pattern.compile("(\\w+)\\s*(<=|>=|=|<|>)\\s*('([^'\\\\]*)'|-?[0-9]+(\\.[0-9]+)?)");
+
+    private final String columnName;
+    private final String operator;
+    private final Object value;
+
+    IndexPredicate(String columnName, String operator, Object value)
+    {
+        this.columnName = ColumnNameMap.toLowerCase(columnName);
+        this.operator = operator;
+        this.value = value;
+    }
+
+    /**
+     * Returns the comparisons that must all be true for a row to match the
+     * filter. Only comparisons that are operands of the top-level chain of
+     * {@code and} operators are used. Other operands are left out, which
+     * only makes the filter match more rows. The result is empty if the
+     * filter is not such a chain.
+     */
+    public static List<IndexPredicate> fromFilterText(String filterText)
+    {
+        if (filterText == null) {
+            return Collections.emptyList();
+        }
+        List<IndexPredicate> predicates = new ArrayList<IndexPredicate>();
+        if (!addConjuncts(filterText, predicates)) {
+            return Collections.emptyList();
+        }
+        return predicates;
+    }
+
+    /**
+     * Add the comparisons of the operands of the expression, which is split
+     * on the {@code and} operators outside of parentheses and literals.
+     *
+     * @return false if the expression cannot be split
+     */
+    private static boolean addConjuncts(String expression, List<IndexPredicate> predicates)
+    {
+        String text = stripParentheses(expression);
+        List<String> operands = splitConjunction(text);
+        if (operands == null) {
+            return false;
+        }
+        if (operands.size() > 1) {
+            for (String operand : operands) {
+                if (!addConjuncts(operand, predicates)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        Matcher matcher = COMPARISON.matcher(text);
+        if (!matcher.matches()) {
+            // an operand that is not understood only makes the filter weaker
+            return true;
+        }
+        Object value;
+        if (matcher.group(4) != null) {
+            value = matcher.group(4);
+        }
+        else if (matcher.group(5) != null) {
+            value = Double.parseDouble(matcher.group(3));
+        }
+        else {
+            value = Long.parseLong(matcher.group(3));
+        }
+        predicates.add(new IndexPredicate(matcher.group(1), matcher.group(2), value));
+        return true;
+    }
+
+    /**
+     * Remove the parentheses around the whole expression.
+     */
+    private static String stripParentheses(String expression)
+    {
+        String text = expression.trim();
+        while (text.startsWith("(") && (findClosingParenthesis(text) == text.length() - 1)) {
+            text = text.substring(1, text.length() - 1).trim();
+        }
+        return text;
+    }
+
+    /**
+     * Returns the position of the parenthesis that closes the one at the
+     * start of the text, or -1 if there is none.
+     */
+    private static int findClosingParenthesis(String text)
+    {
+        int depth = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\'') {
+                i = skipLiteral(text, i);
+                if (i < 0) {
+                    return -1;
+                }
+            }
+            else if (c == '(') {
+                depth++;
+            }
+            else if (c == ')') {
+                depth--;
+                if (depth == 0) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Split the text on the {@code and} operators that are outside of
+     * parentheses and literals, or return null if the parentheses or
+     * literals are not balanced.
+     */
+    private static List<String> splitConjunction(String text)
+    {
+        List<String> operands = new ArrayList<String>();
+        int depth = 0;
+        int start = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\'') {
+                i = skipLiteral(text, i);
+                if (i < 0) {
+                    return null;
+                }
+            }
+            else if (c == '(') {
+                depth++;
+            }
+            else if (c == ')') {
+                depth--;
+                if (depth < 0) {
+                    return null;
+                }
+            }
+            else if ((depth == 0) && isAnd(text, i)) {
+                operands.add(text.substring(start, i));
+                i += 2;
+                start = i + 1;
+            }
+        }
+        if (depth != 0) {
+            return null;
+        }
+        operands.add(text.substring(start));
+        return operands;
+    }
+
+    private static boolean isAnd(String text, int position)
+    {
+        if (!text.regionMatches(true, position, "and", 0, 3)) {
+            return false;
+        }
+        boolean wordStart = (position == 0) || !isWordCharacter(text.charAt(position - 1));
+        boolean wordEnd = (position + 3 == text.length()) || !isWordCharacter(text.charAt(position + 3));
+        return wordStart && wordEnd;
+    }
+
+    private static boolean isWordCharacter(char c)
+    {
+        return Character.isLetterOrDigit(c) || (c == '_');
+    }
+
+    /**
+     * Returns the position of the quote that ends the literal starting at
+     * the position, or -1 if the literal is not terminated.
+     */
+    private static int skipLiteral(String text, int start)
+    {
+        for (int i = start + 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                i++;
+            }
+            else if (c == '\'') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public String getColumnName()
+    {
+        return columnName;
+    }
+
+    /**
+     * Returns false if no value between the minimum and maximum matches the
+     * comparison. A null minimum means that the column has no values, so no
+     * comparison can be true.
+     */
+    public boolean mightMatch(Object min, Object max)
+    {
+        if (min == null) {
+            return false;
+        }
+        Integer minCompare = compare(min);
+        Integer maxCompare = compare(max);
+        if ((minCompare == null) || (maxCompare == null)) {
+            return true;
+        }
+        if (operator.equals("=")) {
+            return (minCompare <= 0) && (maxCompare >= 0);
+        }
+        if (operator.equals("<")) {
+            return minCompare < 0;
+        }
+        if (operator.equals("<=")) {
+            return minCompare <= 0;
+        }
+        if (operator.equals(">")) {
+            return maxCompare > 0;
+        }
+        return maxCompare >= 0;
+    }
+
+    /**
+     * Compare the statistic with the literal, or return null if they do
+     * not have comparable types.
+     */
+    private Integer compare(Object stat)
+    {
+        if ((stat instanceof String) && (value instanceof String)) {
+            return compareUtf8((String) stat, (String) value);
+        }
+        if ((stat instanceof Number) && (value instanceof Number)) {
+            if ((stat instanceof Long) && (value instanceof Long)) {
+                return ((Long) stat).compareTo((Long) value);
+            }
+            return Double.compare(((Number) stat).doubleValue(), ((Number) value).doubleValue());
+        }
+        return null;
+    }
+
+    /**
+     * Compare the strings in the order of their UTF-8 bytes, which is the
+     * order Hive uses for strings. This is the order of the code points,
+     * which differs from {@link String#compareTo} for characters outside
+     * of the Basic Multilingual Plane.
+     */
+    static int compareUtf8(String a, String b)
+    {
+        int length = Math.min(a.length(), b.length());
+        for (int i = 0; i < length; i++) {
+            char c1 = a.charAt(i);
+            char c2 = b.charAt(i);
+            if (c1 != c2) {
+                return toCodePointOrder(c1) - toCodePointOrder(c2);
+            }
+        }
+        return a.length() - b.length();
+    }
+
+    /**
+     * Move the surrogates above the other characters, so that comparing
+     * the UTF-16 code units compares the code points.
+     */
+    private static int toCodePointOrder(char c)
+    {
+        if (c >= 0xE000) {
+            return c - 0x800;
+        }
+        if (c >= 0xD800) {
+            return c + 0x2000;
+        }
+        return c;
+    }
+}
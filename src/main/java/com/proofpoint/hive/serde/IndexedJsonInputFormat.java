@@ -0,0 +1,214 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.LineRecordReader;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.TextInputFormat;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A text input format that uses the {@link JsonIndex} of each file to skip
+ * the blocks of lines that cannot match the filter pushed down by Hive.
+ * Splits without any matching block are dropped, and the record reader
+ * only reads the matching blocks of a split. Files without a current index
+ * are read in full.
+ */
+public class IndexedJsonInputFormat
+        extends TextInputFormat
+{
+    // TableScanDesc.FILTER_TEXT_CONF_STR, which is not in the serde library
+    private static final String FILTER_TEXT_CONF_STR = "hive.io.filter.text";
+
+    @Override
+    public InputSplit[] getSplits(JobConf job, int numSplits)
+            throws IOException
+    {
+        InputSplit[] splits = super.getSplits(job, numSplits);
+        List<IndexPredicate> predicates = IndexPredicate.fromFilterText(job.get(FILTER_TEXT_CONF_STR));
+        if (predicates.isEmpty()) {
+            return splits;
+        }
+
+        Map<Path, JsonIndex> indexes = new HashMap<Path, JsonIndex>();
+        List<InputSplit> matching = new ArrayList<InputSplit>();
+        for (InputSplit split : splits) {
+            FileSplit fileSplit = (FileSplit) split;
+            Path file = fileSplit.getPath();
+            if (!indexes.containsKey(file)) {
+                indexes.put(file, JsonIndex.read(file.getFileSystem(job), file));
+            }
+            JsonIndex index = indexes.get(file);
+            if ((index == null) || !getRanges(index, fileSplit, predicates).isEmpty()) {
+                matching.add(split);
+            }
+        }
+        return matching.toArray(new InputSplit[matching.size()]);
+    }
+
+    @Override
+    public RecordReader<LongWritable, Text> getRecordReader(InputSplit split, JobConf job, Reporter reporter)
+            throws IOException
+    {
+        reporter.setStatus(split.toString());
+        FileSplit fileSplit = (FileSplit) split;
+        List<IndexPredicate> predicates = IndexPredicate.fromFilterText(job.get(FILTER_TEXT_CONF_STR));
+        JsonIndex index = null;
+        if (!predicates.isEmpty()) {
+            FileSystem fs = fileSplit.getPath().getFileSystem(job);
+            index = JsonIndex.read(fs, fileSplit.getPath());
+        }
+        if (index == null) {
+            return new MetricsRecordReader<LongWritable, Text>(new LineRecordReader(job, fileSplit), reporter);
+        }
+        return new MetricsRecordReader<LongWritable, Text>(new BlockRecordReader(job, getRanges(index, fileSplit, predicates)), reporter);
+    }
+
+    /**
+     * Returns the parts of the split that are in matching blocks, with
+     * adjacent blocks merged into one range.
+     */
+    private static List<FileSplit> getRanges(JsonIndex index, FileSplit split, List<IndexPredicate> predicates)
+    {
+        long splitStart = split.getStart();
+        long splitEnd = splitStart + split.getLength();
+        List<FileSplit> ranges = new ArrayList<FileSplit>();
+        long rangeStart = -1;
+        long rangeEnd = -1;
+        for (JsonIndex.Block block : index.getMatchingBlocks(splitStart, splitEnd, predicates)) {
+            long start = Math.max(splitStart, block.getStart());
+            long end = Math.min(splitEnd, block.getEnd());
+            if (start != rangeEnd) {
+                if (rangeStart >= 0) {
+                    ranges.add(new FileSplit(split.getPath(), rangeStart, rangeEnd - rangeStart, (String[]) null));
+                }
+                rangeStart = start;
+            }
+            rangeEnd = end;
+        }
+        if (rangeStart >= 0) {
+            ranges.add(new FileSplit(split.getPath(), rangeStart, rangeEnd - rangeStart, (String[]) null));
+        }
+        return ranges;
+    }
+
+    /**
+     * Reads the lines of each range in turn. A line belongs to the range in
+     * which it starts, as for splits, so the block boundaries of the index
+     * can be used as range boundaries.
+     */
+    private static class BlockRecordReader
+            implements RecordReader<LongWritable, Text>
+    {
+        private final JobConf job;
+        private final List<FileSplit> ranges;
+        private final long totalLength;
+        private long completedLength;
+        private int rangeIndex;
+        private LineRecordReader current;
+
+        private BlockRecordReader(JobConf job, List<FileSplit> ranges)
+        {
+            this.job = job;
+            this.ranges = ranges;
+            long length = 0;
+            for (FileSplit range : ranges) {
+                length += range.getLength();
+            }
+            totalLength = length;
+        }
+
+        @Override
+        public boolean next(LongWritable key, Text value)
+                throws IOException
+        {
+            while (true) {
+                if (current == null) {
+                    if (rangeIndex == ranges.size()) {
+                        return false;
+                    }
+                    current = new LineRecordReader(job, ranges.get(rangeIndex));
+                }
+                if (current.next(key, value)) {
+                    return true;
+                }
+                current.close();
+                current = null;
+                completedLength += ranges.get(rangeIndex).getLength();
+                rangeIndex++;
+            }
+        }
+
+        @Override
+        public LongWritable createKey()
+        {
+            return new LongWritable();
+        }
+
+        @Override
+        public Text createValue()
+        {
+            return new Text();
+        }
+
+        @Override
+        public long getPos()
+                throws IOException
+        {
+            if (current != null) {
+                return current.getPos();
+            }
+            if (rangeIndex < ranges.size()) {
+                return ranges.get(rangeIndex).getStart();
+            }
+            return ranges.isEmpty() ? 0 : (ranges.get(ranges.size() - 1).getStart() + ranges.get(ranges.size() - 1).getLength());
+        }
+
+        @Override
+        public float getProgress()
+                throws IOException
+        {
+            if (totalLength == 0) {
+                return 1.0f;
+            }
+            float currentLength = (current == null) ? 0 : current.getProgress() * ranges.get(rangeIndex).getLength();
+            return Math.min(1.0f, (completedLength + currentLength) / totalLength);
+        }
+
+        @Override
+        public void close()
+                throws IOException
+        {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.typeinfo.ListTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.MapTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.IOException;
+
+import static java.lang.String.format;
+
+/**
+ * Decodes the JSON value at the current parser token into the Java object
+ * for a column. Decoders are compiled once per column from the table schema,
+ * so the type dispatch and the column name used for error messages are
+ * resolved up front rather than for every value.
+ */
+abstract class JsonDecoder
+{
+    protected final String columnName;
+
+    protected JsonDecoder(String columnName)
+    {
+        this.columnName = columnName;
+    }
+
+    public static JsonDecoder create(String columnName, TypeInfo typeInfo, DecoderSettings settings)
+    {
+        switch (typeInfo.getCategory()) {
+            case LIST:
+                return new ListDecoder(columnName, (ListTypeInfo) typeInfo, settings);
+            case MAP:
+                return new MapDecoder(columnName, (MapTypeInfo) typeInfo, settings);
+            case PRIMITIVE:
+                return PrimitiveDecoder.create(columnName, (PrimitiveTypeInfo) typeInfo, settings);
+            case STRUCT:
+                return new StructDecoder(columnName, (StructTypeInfo) typeInfo, null, settings);
+            default:
+                return new UnsupportedDecoder(columnName, format("unexpected type category (%s) for column: %s", typeInfo.getCategory(), columnName));
+        }
+    }
+
+    public String getColumnName()
+    {
+        return columnName;
+    }
+
+    /**
+     * Decode the value at the current token, leaving the parser on the last
+     * token of the value.
+     */
+    public final Object decode(JsonParser parser)
+            throws IOException, SerDeException
+    {
+        return decode(parser, null);
+    }
+
+    /**
+     * Decode the value at the current token, reusing the previous value for
+     * the same position where possible.
+     *
+     * @param reuse the previous value created by this decoder, or null
+     */
+    public final Object decode(JsonParser parser, Object reuse)
+            throws IOException, SerDeException
+    {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return decodeValue(parser, reuse);
+    }
+
+    protected abstract Object decodeValue(JsonParser parser, Object reuse)
+            throws IOException, SerDeException;
+
+    /**
+     * Decode the value at the current token into a row of a column vector
+     * created for the type of this decoder by {@link ColumnVector#create}.
+     * Values that are not primitives are stored as decoded.
+     *
+     * @param bytes the input record, which string vectors may reference
+     */
+    public final void decodeVector(JsonParser parser, byte[] bytes, int end, ColumnVector vector, int row)
+            throws IOException, SerDeException
+    {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            vector.setNull(row);
+            return;
+        }
+        vector.isNull[row] = false;
+        decodeVectorValue(parser, bytes, end, vector, row);
+    }
+
+    protected void decodeVectorValue(JsonParser parser, byte[] bytes, int end, ColumnVector vector, int row)
+            throws IOException, SerDeException
+    {
+        ((ColumnVector.ObjectColumnVector) vector).vector[row] = decodeValue(parser, null);
+    }
+
+    /**
+     * Decode the value at the current token for a lazily parsed row.
+     * Containers return an unparsed lazy object and skip their contents.
+     */
+    public Object decodeLazy(JsonParser parser, JsonSerde serde, byte[] bytes, int end)
+            throws IOException, SerDeException
+    {
+        return decode(parser);
+    }
+
+    /**
+     * Returns true if a lazily parsed row should only record the position of
+     * the value at the current token and decode it when it is accessed.
+     */
+    public boolean isDeferrable(JsonToken token)
+    {
+        return false;
+    }
+
+    /**
+     * Decode a deferred value directly from the input bytes, without
+     * creating a parser, or return null if the value must be decoded by a
+     * parser positioned at the offset.
+     */
+    public Object decodeDeferred(byte[] bytes, int offset, int end)
+    {
+        return null;
+    }
+
+    /**
+     * Add the field order prediction hits and misses of this decoder and
+     * its children to the first and second elements of the array.
+     */
+    public void addPredictionCounts(long[] counts)
+    {
+    }
+
+    /**
+     * Returns the name of the tree node class that the tree parser creates
+     * for the current token, which is used in error messages.
+     */
+    protected static String getNodeTypeName(JsonParser parser)
+            throws IOException
+    {
+        JsonToken token = parser.getCurrentToken();
+        switch (token) {
+            case START_OBJECT:
+                return "ObjectNode";
+            case START_ARRAY:
+                return "ArrayNode";
+            case VALUE_STRING:
+                return "TextNode";
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        return "IntNode";
+                    case LONG:
+                        return "LongNode";
+                    default:
+                        return "BigIntegerNode";
+                }
+            case VALUE_NUMBER_FLOAT:
+                return "DoubleNode";
+            case VALUE_TRUE:
+            case VALUE_FALSE:
+                return "BooleanNode";
+            case VALUE_NULL:
+                return "NullNode";
+            case VALUE_EMBEDDED_OBJECT:
+                return "POJONode";
+            default:
+                return String.valueOf(token);
+        }
+    }
+
+    private static class UnsupportedDecoder
+            extends JsonDecoder
+    {
+        private final String message;
+
+        private UnsupportedDecoder(String columnName, String message)
+        {
+            super(columnName);
+            this.message = message;
+        }
+
+        @Override
+        protected Object decodeValue(JsonParser parser, Object reuse)
+                throws SerDeException
+        {
+            throw new SerDeException(message);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.MapObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.BooleanObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.ByteObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.DoubleObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.FloatObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.IntObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.LongObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.ShortObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.ListTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.MapTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.io.Text;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.io.SerializedString;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.String.format;
+
+/**
+ * Writes a column value described by an object inspector to a JSON
+ * generator. Encoders are built once per table from the column types.
+ * Struct field names come from the table schema rather than the
+ * inspector, so that the output can be read back by the same table.
+ */
+abstract class JsonEncoder
+{
+    protected final String columnName;
+
+    protected JsonEncoder(String columnName)
+    {
+        this.columnName = columnName;
+    }
+
+    public static JsonEncoder create(String columnName, TypeInfo typeInfo)
+    {
+        switch (typeInfo.getCategory()) {
+            case LIST:
+                return new ListEncoder(columnName, (ListTypeInfo) typeInfo);
+            case MAP:
+                return new MapEncoder(columnName, (MapTypeInfo) typeInfo);
+            case STRUCT:
+                return new StructEncoder(columnName, (StructTypeInfo) typeInfo);
+            default:
+                return new PrimitiveEncoder(columnName);
+        }
+    }
+
+    /**
+     * Write the value, or a JSON null if the value is null.
+     */
+    public final void encode(JsonGenerator generator, Object value, ObjectInspector inspector)
+            throws IOException, SerDeException
+    {
+        if (value == null) {
+            generator.writeNull();
+            return;
+        }
+        encodeValue(generator, value, inspector);
+    }
+
+    protected abstract void encodeValue(JsonGenerator generator, Object value, ObjectInspector inspector)
+            throws IOException, SerDeException;
+
+    protected void checkCategory(ObjectInspector inspector, Category expected)
+            throws SerDeException
+    {
+        if (inspector.getCategory() != expected) {
+            throw new SerDeException(format("expected %s, found %s for column %s", expected, inspector.getTypeName(), columnName));
+        }
+    }
+
+    static class StructEncoder
+            extends JsonEncoder
+    {
+        private final SerializedString[] fieldNames;
+        private final JsonEncoder[] fieldEncoders;
+
+        StructEncoder(String columnName, StructTypeInfo typeInfo)
+        {
+            super(columnName);
+            List<String> names = typeInfo.getAllStructFieldNames();
+            List<TypeInfo> types = typeInfo.getAllStructFieldTypeInfos();
+            fieldNames = new SerializedString[names.size()];
+            fieldEncoders = new JsonEncoder[names.size()];
+            for (int i = 0; i < fieldNames.length; i++) {
+                fieldNames[i] = new SerializedString(names.get(i));
+                String structColumn = (columnName == null) ? names.get(i) : (columnName + "." + names.get(i));
+                fieldEncoders[i] = create(structColumn, types.get(i));
+            }
+        }
+
+        @Override
+        protected void encodeValue(JsonGenerator generator, Object value, ObjectInspector inspector)
+                throws IOException, SerDeException
+        {
+            checkCategory(inspector, Category.STRUCT);
+            generator.writeStartObject();
+            encodeFields(generator, value, (StructObjectInspector) inspector, null);
+            generator.writeEndObject();
+        }
+
+        /**
+         * Write the fields of the struct to the current JSON object. Null
+         * fields are omitted, since a missing field is read back as null.
+         *
+         * @param excluded the fields to omit, or null to write all fields
+         */
+        public void encodeFields(JsonGenerator generator, Object value, StructObjectInspector inspector, boolean[] excluded)
+                throws IOException, SerDeException
+        {
+            List<? extends StructField> fields = inspector.getAllStructFieldRefs();
+            if (fields.size() != fieldNames.length) {
+                throw new SerDeException(format("expected %s struct fields, found %s for column %s", fieldNames.length, fields.size(), columnName));
+            }
+            for (int i = 0; i < fieldNames.length; i++) {
+                if ((excluded != null) && excluded[i]) {
+                    continue;
+                }
+                StructField field = fields.get(i);
+                Object fieldValue = inspector.getStructFieldData(value, field);
+                if (fieldValue != null) {
+                    generator.writeFieldName(fieldNames[i]);
+                    fieldEncoders[i].encodeValue(generator, fieldValue, field.getFieldObjectInspector());
+                }
+            }
+        }
+    }
+
+    private static class ListEncoder
+            extends JsonEncoder
+    {
+        private final JsonEncoder elementEncoder;
+
+        private ListEncoder(String columnName, ListTypeInfo typeInfo)
+        {
+            super(columnName);
+            elementEncoder = create(columnName, typeInfo.getListElementTypeInfo());
+        }
+
+        @Override
+        protected void encodeValue(JsonGenerator generator, Object value, ObjectInspector inspector)
+                throws IOException, SerDeException
+        {
+            checkCategory(inspector, Category.LIST);
+            ListObjectInspector listInspector = (ListObjectInspector) inspector;
+            ObjectInspector elementInspector = listInspector.getListElementObjectInspector();
+            int length = listInspector.getListLength(value);
+            generator.writeStartArray();
+            for (int i = 0; i < length; i++) {
+                elementEncoder.encode(generator, listInspector.getListElement(value, i), elementInspector);
+            }
+            generator.writeEndArray();
+        }
+    }
+
+    private static class MapEncoder
+            extends JsonEncoder
+    {
+        private final JsonEncoder valueEncoder;
+
+        private MapEncoder(String columnName, MapTypeInfo typeInfo)
+        {
+            super(columnName);
+            valueEncoder = create(columnName, typeInfo.getMapValueTypeInfo());
+        }
+
+        @Override
+        protected void encodeValue(JsonGenerator generator, Object value, ObjectInspector inspector)
+                throws IOException, SerDeException
+        {
+            checkCategory(inspector, Category.MAP);
+            MapObjectInspector mapInspector = (MapObjectInspector) inspector;
+            checkCategory(mapInspector.getMapKeyObjectInspector(), Category.PRIMITIVE);
+            PrimitiveObjectInspector keyInspector = (PrimitiveObjectInspector) mapInspector.getMapKeyObjectInspector();
+            ObjectInspector valueInspector = mapInspector.getMapValueObjectInspector();
+
+            generator.writeStartObject();
+            for (Map.Entry<?, ?> entry : mapInspector.getMap(value).entrySet()) {
+                Object key = keyInspector.getPrimitiveJavaObject(entry.getKey());
+                if (key != null) {
+                    generator.writeFieldName(key.toString());
+                    valueEncoder.encode(generator, entry.getValue(), valueInspector);
+                }
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    private static class PrimitiveEncoder
+            extends JsonEncoder
+    {
+        private PrimitiveEncoder(String columnName)
+        {
+            super(columnName);
+        }
+
+        @Override
+        protected void encodeValue(JsonGenerator generator, Object value, ObjectInspector inspector)
+                throws IOException, SerDeException
+        {
+            checkCategory(inspector, Category.PRIMITIVE);
+            PrimitiveObjectInspector primitiveInspector = (PrimitiveObjectInspector) inspector;
+            switch (primitiveInspector.getPrimitiveCategory()) {
+                case VOID:
+                    generator.writeNull();
+                    break;
+                case BOOLEAN:
+                    generator.writeBoolean(((BooleanObjectInspector) inspector).get(value));
+                    break;
+                case BYTE:
+                    generator.writeNumber(((ByteObjectInspector) inspector).get(value));
+                    break;
+                case SHORT:
+                    generator.writeNumber(((ShortObjectInspector) inspector).get(value));
+                    break;
+                case INT:
+                    generator.writeNumber(((IntObjectInspector) inspector).get(value));
+                    break;
+                case LONG:
+                    generator.writeNumber(((LongObjectInspector) inspector).get(value));
+                    break;
+                case FLOAT:
+                    generator.writeNumber(((FloatObjectInspector) inspector).get(value));
+                    break;
+                case DOUBLE:
+                    generator.writeNumber(((DoubleObjectInspector) inspector).get(value));
+                    break;
+                case STRING:
+                    StringObjectInspector stringInspector = (StringObjectInspector) inspector;
+                    if (stringInspector.preferWritable()) {
+                        // write the UTF-8 bytes without decoding them
+                        Text text = stringInspector.getPrimitiveWritableObject(value);
+                        generator.writeUTF8String(text.getBytes(), 0, text.getLength());
+                    }
+                    else {
+                        generator.writeString(stringInspector.getPrimitiveJavaObject(value));
+                    }
+                    break;
+                default:
+                    throw new SerDeException(format("unhandled primitive type %s for column %s", primitiveInspector.getPrimitiveCategory(), columnName));
+            }
+        }
+    }
+}
@@ -17,13 +17,22 @@ package com.proofpoint.hive.serde;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.BinaryComparable;
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 
-import java.util.Map;
+import java.io.EOFException;
+import java.io.IOException;
 import java.util.Properties;
 
 public class JsonEventSerde
@@ -34,17 +43,156 @@ public class JsonEventSerde
     private Integer uuidColumn;
     private Integer hostColumn;
     private Integer timestampColumn;
+    private int uuidField;
+    private int hostField;
+    private int timestampField;
+    private boolean[] envelopeFields;
+    private final EventTimestampConverter timestampConverter = new EventTimestampConverter();
+    private StringInternCache uuidCache;
+    private StringInternCache hostCache;
+    private EnvelopeField uuidEnvelope;
+    private EnvelopeField hostEnvelope;
+    private EnvelopeField timestampEnvelope;
 
     @Override
     public void initialize(Configuration configuration, Properties table)
             throws SerDeException
     {
+        if (Boolean.parseBoolean(table.getProperty("parse.lazy"))) {
+            throw new SerDeException("lazy parsing is not supported for events");
+        }
+        if ((table.getProperty("filter.column") != null) || Boolean.parseBoolean(table.getProperty("filter.pushdown"))) {
+            throw new SerDeException("prefiltering is not supported for events");
+        }
+        if (!getColumnMappings(table).isEmpty()) {
+            throw new SerDeException("column mappings are not supported for events");
+        }
         super.initialize(configuration, table);
 
-        Map<String, Integer> columnNames = columnNameMap.getColumnNames(rootTypeInfo);
-        uuidColumn = columnNames.get("uuid");
-        hostColumn = columnNames.get("host");
-        timestampColumn = columnNames.get("ts");
+        uuidColumn = getProjectedColumn("uuid");
+        hostColumn = getProjectedColumn("host");
+        timestampColumn = getProjectedColumn("ts");
+        // envelope fields are always validated, but only interned if projected
+        uuidCache = (uuidColumn == null) ? null : decoderSettings.getInternCache("uuid");
+        hostCache = (hostColumn == null) ? null : decoderSettings.getInternCache("host");
+        uuidEnvelope = new EnvelopeField("uuid", uuidCache);
+        hostEnvelope = new EnvelopeField("host", hostCache);
+        timestampEnvelope = new EnvelopeField("timestamp", null);
+
+        uuidField = rootDecoder.getFieldIndex("uuid");
+        hostField = rootDecoder.getFieldIndex("host");
+        timestampField = rootDecoder.getFieldIndex("ts");
+        envelopeFields = new boolean[rootDecoder.getFieldCount()];
+        for (int field : new int[] {uuidField, hostField, timestampField}) {
+            if (field >= 0) {
+                envelopeFields[field] = true;
+            }
+        }
+    }
+
+    private Integer getProjectedColumn(String name)
+    {
+        int column = rootDecoder.getFieldIndex(name);
+        if ((column < 0) || !isColumnProjected(column)) {
+            return null;
+        }
+        return column;
+    }
+
+    @Override
+    public void deserializeBatch(BinaryComparable[] records, int count, RowBatch batch)
+            throws SerDeException
+    {
+        throw new SerDeException("batch deserialization is not supported for events");
+    }
+
+    /**
+     * Decode the event in a single pass. The data object is decoded into
+     * the row as it is read, and the envelope fields, which may appear in
+     * any order, are validated at the end with the same errors as the tree
+     * path. Envelope fields for columns of the table are validated even if
+     * the column is not projected.
+     */
+    @Override
+    protected Object[] buildStruct(JsonParser jsonParser)
+            throws IOException, SerDeException
+    {
+        if (jsonParser.nextToken() == null) {
+            throw new EOFException("No content to map to Object due to end of input");
+        }
+        if (jsonParser.getCurrentToken() != JsonToken.START_OBJECT) {
+            jsonParser.skipChildren();
+            throw new SerDeException("data field is missing");
+        }
+
+        Object[] struct = null;
+        boolean dataPresent = false;
+        boolean dataObject = false;
+        uuidEnvelope.reset();
+        hostEnvelope.reset();
+        timestampEnvelope.reset();
+        RecordLimits limits = decoderSettings.getLimits();
+        if (limits != null) {
+            limits.enterContainer();
+        }
+        int fields = 0;
+        while (jsonParser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = jsonParser.getCurrentName();
+            fields++;
+            if (limits != null) {
+                limits.checkObjectFields(fields);
+            }
+            jsonParser.nextToken();
+            if (name.equals("data")) {
+                // the last data field wins, as in the tree
+                dataPresent = true;
+                dataObject = (jsonParser.getCurrentToken() == JsonToken.START_OBJECT);
+                if (dataObject) {
+                    struct = decodeRow(jsonParser);
+                }
+                else {
+                    jsonParser.skipChildren();
+                }
+            }
+            else if ((uuidField >= 0) && name.equals(uuidEnvelope.name)) {
+                uuidEnvelope.read(jsonParser);
+            }
+            else if ((hostField >= 0) && name.equals(hostEnvelope.name)) {
+                hostEnvelope.read(jsonParser);
+            }
+            else if ((timestampField >= 0) && name.equals(timestampEnvelope.name)) {
+                timestampEnvelope.read(jsonParser);
+            }
+            else {
+                jsonParser.skipChildren();
+            }
+        }
+
+        if (!dataPresent) {
+            throw new SerDeException("data field is missing");
+        }
+        if (!dataObject) {
+            throw new SerDeException("data field is not an object");
+        }
+        if (uuidField >= 0) {
+            String uuid = uuidEnvelope.getValue();
+            if (uuidColumn != null) {
+                struct[uuidColumn] = getStringValue(uuid, struct[uuidColumn]);
+            }
+        }
+        if (hostField >= 0) {
+            String host = hostEnvelope.getValue();
+            if (hostColumn != null) {
+                struct[hostColumn] = getStringValue(host, struct[hostColumn]);
+            }
+        }
+        if (timestampField >= 0) {
+            String ts = timestampConverter.toHiveTimestamp(timestampEnvelope.getValue());
+            if (timestampColumn != null) {
+                struct[timestampColumn] = getStringValue(ts, struct[timestampColumn]);
+            }
+        }
+        return struct;
     }
 
     @Override
@@ -58,34 +206,90 @@ public class JsonEventSerde
         if (!dataNode.isObject()) {
             throw new SerDeException("data field is not an object");
         }
+        RecordLimits limits = decoderSettings.getLimits();
+        if (limits != null) {
+            // the envelope is the first level, as in the streaming path
+            limits.enterContainer();
+            limits.checkObjectFields(tree.size());
+        }
 
         Object[] struct = processFields(dataNode);
 
-        if (uuidColumn != null) {
-            struct[uuidColumn] = getTextNode(tree, "uuid");
+        if (uuidField >= 0) {
+            String uuid = getTextNode(tree, "uuid");
+            if (uuidColumn != null) {
+                struct[uuidColumn] = getStringValue(intern(uuidCache, uuid), struct[uuidColumn]);
+            }
         }
-        if (hostColumn != null) {
-            struct[hostColumn] = getTextNode(tree, "host");
+        if (hostField >= 0) {
+            String host = getTextNode(tree, "host");
+            if (hostColumn != null) {
+                struct[hostColumn] = getStringValue(intern(hostCache, host), struct[hostColumn]);
+            }
         }
-        if (timestampColumn != null) {
-            long ts = parseTimestamp(getTextNode(tree, "timestamp"));
-            struct[timestampColumn] = HIVE_FORMATTER.print(ts);
+        if (timestampField >= 0) {
+            String ts = timestampConverter.toHiveTimestamp(getTextNode(tree, "timestamp"));
+            if (timestampColumn != null) {
+                struct[timestampColumn] = getStringValue(ts, struct[timestampColumn]);
+            }
         }
 
         return struct;
     }
 
-    private static long parseTimestamp(String timestamp)
+    @Override
+    protected void writeRow(JsonGenerator generator, Object row, StructObjectInspector inspector)
+            throws IOException, SerDeException
+    {
+        generator.writeStartObject();
+        if (uuidField >= 0) {
+            generator.writeStringField("uuid", getEnvelopeValue(row, inspector, uuidField));
+        }
+        if (hostField >= 0) {
+            generator.writeStringField("host", getEnvelopeValue(row, inspector, hostField));
+        }
+        if (timestampField >= 0) {
+            String timestamp = getEnvelopeValue(row, inspector, timestampField);
+            generator.writeStringField("timestamp", ISO_FORMATTER.print(parseTimestamp(HIVE_FORMATTER, timestamp)));
+        }
+        generator.writeFieldName("data");
+        generator.writeStartObject();
+        rootEncoder.encodeFields(generator, row, inspector, envelopeFields);
+        generator.writeEndObject();
+        generator.writeEndObject();
+    }
+
+    private static String getEnvelopeValue(Object row, StructObjectInspector inspector, int field)
+            throws SerDeException
+    {
+        StructField fieldRef = inspector.getAllStructFieldRefs().get(field);
+        Object value = inspector.getStructFieldData(row, fieldRef);
+        ObjectInspector fieldInspector = fieldRef.getFieldObjectInspector();
+        if ((value != null) && (fieldInspector.getCategory() == ObjectInspector.Category.PRIMITIVE)) {
+            value = ((PrimitiveObjectInspector) fieldInspector).getPrimitiveJavaObject(value);
+        }
+        if (value == null) {
+            throw new SerDeException(fieldRef.getFieldName() + " column is null");
+        }
+        return value.toString();
+    }
+
+    private static long parseTimestamp(DateTimeFormatter formatter, String timestamp)
             throws SerDeException
     {
         try {
-            return ISO_FORMATTER.parseMillis(timestamp);
+            return formatter.parseMillis(timestamp);
         }
         catch (Exception e) {
             throw new SerDeException("invalid timestamp: " + timestamp);
         }
     }
 
+    private static String intern(StringInternCache cache, String value)
+    {
+        return (cache == null) ? value : cache.intern(value);
+    }
+
     private static String getTextNode(JsonNode tree, String field)
             throws SerDeException
     {
@@ -98,4 +302,60 @@ public class JsonEventSerde
         }
         return node.getTextValue();
     }
+
+    /**
+     * The value of an envelope field in the record being decoded by the
+     * streaming path.
+     */
+    private static class EnvelopeField
+    {
+        private final String name;
+        private final StringInternCache cache;
+        private boolean present;
+        private String value;
+
+        private EnvelopeField(String name, StringInternCache cache)
+        {
+            this.name = name;
+            this.cache = cache;
+        }
+
+        public void reset()
+        {
+            present = false;
+            value = null;
+        }
+
+        /**
+         * Read the value at the current token. Values that are not text
+         * are skipped and reported by {@link #getValue}.
+         */
+        public void read(JsonParser parser)
+                throws IOException
+        {
+            present = true;
+            if (parser.getCurrentToken() != JsonToken.VALUE_STRING) {
+                value = null;
+                parser.skipChildren();
+            }
+            else if (cache == null) {
+                value = parser.getText();
+            }
+            else {
+                value = cache.intern(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            }
+        }
+
+        public String getValue()
+                throws SerDeException
+        {
+            if (!present) {
+                throw new SerDeException(name + " field is missing");
+            }
+            if (value == null) {
+                throw new SerDeException(name + " field is not text");
+            }
+            return value;
+        }
+    }
 }
@@ -0,0 +1,327 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.String.format;
+
+/**
+ * A sidecar index for a file of JSON lines. The file is divided into blocks
+ * of lines, and the index records the byte range, row count and number of
+ * rows that could not be read of each block, together with the minimum and
+ * maximum values of selected columns. Blocks with rows that could not be
+ * read are never skipped, so that the errors are not hidden.
+ * The index is stored next to the file as a hidden file, so that it is not
+ * read as table data, and is ignored if the file has changed since it was
+ * written. An index that cannot be read, such as one written by another
+ * version or one that is truncated, is also ignored with a warning, so
+ * the file is read in full.
+ */
+final class JsonIndex
+{
+    private static final Log LOG = LogFactory.getLog(JsonIndex.class);
+    private static final int VERSION = 2;
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_DOUBLE = 3;
+
+    private final long fileLength;
+    private final long modificationTime;
+    private final List<String> columnNames;
+    private final List<Block> blocks;
+
+    JsonIndex(long fileLength, long modificationTime, List<String> columnNames, List<Block> blocks)
+    {
+        this.fileLength = fileLength;
+        this.modificationTime = modificationTime;
+        this.columnNames = columnNames;
+        this.blocks = blocks;
+    }
+
+    public static Path getIndexPath(Path file)
+    {
+        return new Path(file.getParent(), "." + file.getName() + ".index");
+    }
+
+    /**
+     * Read the index for the file, or return null if there is no index, the
+     * index cannot be read, or the file has changed since the index was
+     * written.
+     */
+    public static JsonIndex read(FileSystem fs, Path file)
+            throws IOException
+    {
+        FileStatus status = fs.getFileStatus(file);
+        FSDataInputStream in;
+        try {
+            in = fs.open(getIndexPath(file));
+        }
+        catch (FileNotFoundException e) {
+            return null;
+        }
+        try {
+            JsonIndex index;
+            try {
+                index = read(in);
+            }
+            catch (IOException e) {
+                LOG.warn(format("Ignoring invalid index for %s: %s", file, e.getMessage()));
+                return null;
+            }
+            if ((index.fileLength != status.getLen()) || (index.modificationTime != status.getModificationTime())) {
+                return null;
+            }
+            return index;
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    public void write(FileSystem fs, Path file)
+            throws IOException
+    {
+        FSDataOutputStream out = fs.create(getIndexPath(file), true);
+        try {
+            write(out);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    public List<String> getColumnNames()
+    {
+        return columnNames;
+    }
+
+    public List<Block> getBlocks()
+    {
+        return blocks;
+    }
+
+    /**
+     * Returns the blocks that overlap the byte range and that might contain
+     * rows matching all of the predicates.
+     */
+    public List<Block> getMatchingBlocks(long start, long end, List<IndexPredicate> predicates)
+    {
+        List<Block> matching = new ArrayList<Block>();
+        for (Block block : blocks) {
+            if ((block.getEnd() > start) && (block.getStart() < end) && mightMatch(block, predicates)) {
+                matching.add(block);
+            }
+        }
+        return matching;
+    }
+
+    private boolean mightMatch(Block block, List<IndexPredicate> predicates)
+    {
+        if (block.getErrorRows() > 0) {
+            return true;
+        }
+        for (IndexPredicate predicate : predicates) {
+            int column = columnNames.indexOf(predicate.getColumnName());
+            if ((column >= 0) && !predicate.mightMatch(block.getMin(column), block.getMax(column))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void write(DataOutput out)
+            throws IOException
+    {
+        out.writeInt(VERSION);
+        out.writeLong(fileLength);
+        out.writeLong(modificationTime);
+        out.writeInt(columnNames.size());
+        for (String columnName : columnNames) {
+            Text.writeString(out, columnName);
+        }
+        out.writeInt(blocks.size());
+        for (Block block : blocks) {
+            out.writeLong(block.getStart());
+            out.writeLong(block.getEnd());
+            out.writeLong(block.getRowCount());
+            out.writeLong(block.getErrorRows());
+            for (int i = 0; i < columnNames.size(); i++) {
+                writeValue(out, block.getMin(i));
+                writeValue(out, block.getMax(i));
+            }
+        }
+    }
+
+    private static JsonIndex read(DataInput in)
+            throws IOException
+    {
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported index version: " + version);
+        }
+        long fileLength = in.readLong();
+        long modificationTime = in.readLong();
+        int columnCount = in.readInt();
+        if (columnCount < 0) {
+            throw new IOException("invalid column count in index: " + columnCount);
+        }
+        List<String> columnNames = new ArrayList<String>();
+        for (int i = 0; i < columnCount; i++) {
+            columnNames.add(readString(in));
+        }
+        int blockCount = in.readInt();
+        if (blockCount < 0) {
+            throw new IOException("invalid block count in index: " + blockCount);
+        }
+        List<Block> blocks = new ArrayList<Block>();
+        for (int i = 0; i < blockCount; i++) {
+            long start = in.readLong();
+            long end = in.readLong();
+            long rowCount = in.readLong();
+            long errorRows = in.readLong();
+            Object[] min = new Object[columnCount];
+            Object[] max = new Object[columnCount];
+            for (int column = 0; column < columnCount; column++) {
+                min[column] = readValue(in);
+                max[column] = readValue(in);
+            }
+            blocks.add(new Block(start, end, rowCount, errorRows, min, max));
+        }
+        return new JsonIndex(fileLength, modificationTime, columnNames, blocks);
+    }
+
+    private static String readString(DataInput in)
+            throws IOException
+    {
+        int length = WritableUtils.readVInt(in);
+        if (length < 0) {
+            throw new IOException("invalid string length in index: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return Text.decode(bytes);
+    }
+
+    private static void writeValue(DataOutput out, Object value)
+            throws IOException
+    {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        }
+        else if (value instanceof String) {
+            out.writeByte(TYPE_STRING);
+            Text.writeString(out, (String) value);
+        }
+        else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        }
+        else {
+            out.writeByte(TYPE_DOUBLE);
+            out.writeDouble((Double) value);
+        }
+    }
+
+    private static Object readValue(DataInput in)
+            throws IOException
+    {
+        byte type = in.readByte();
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_STRING:
+                return readString(in);
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_DOUBLE:
+                return in.readDouble();
+            default:
+                throw new IOException("invalid value type in index: " + type);
+        }
+    }
+
+    /**
+     * A range of lines in the file. The minimum and maximum of a column are
+     * null if the column has no values in the block. Rows that could not be
+     * read are included in the row count, but not in the statistics.
+     */
+    static class Block
+    {
+        private final long start;
+        private final long end;
+        private final long rowCount;
+        private final long errorRows;
+        private final Object[] min;
+        private final Object[] max;
+
+        Block(long start, long end, long rowCount, long errorRows, Object[] min, Object[] max)
+        {
+            this.start = start;
+            this.end = end;
+            this.rowCount = rowCount;
+            this.errorRows = errorRows;
+            this.min = min;
+            this.max = max;
+        }
+
+        public long getStart()
+        {
+            return start;
+        }
+
+        public long getEnd()
+        {
+            return end;
+        }
+
+        public long getRowCount()
+        {
+            return rowCount;
+        }
+
+        public long getErrorRows()
+        {
+            return errorRows;
+        }
+
+        public Object getMin(int column)
+        {
+            return min[column];
+        }
+
+        public Object getMax(int column)
+        {
+            return max[column];
+        }
+    }
+}
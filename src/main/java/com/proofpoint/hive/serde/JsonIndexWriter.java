@@ -0,0 +1,263 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.serde2.SerDe;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.util.LineReader;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import static java.lang.String.format;
+
+/**
+ * Writes the {@link JsonIndex} for files of JSON lines. The columns are
+ * read with the serde of the table, so the statistics are for the column
+ * values that Hive sees, such as the converted timestamp of an event.
+ * Records that cannot be deserialized are counted as errors of their
+ * block and do not contribute to the statistics, so the block is never
+ * skipped.
+ * <p>
+ * The table is described by a properties file with the serde properties
+ * and the following keys:
+ * <ul>
+ * <li>{@code columns} and {@code columns.types}: the table columns</li>
+ * <li>{@code serde}: the serde class, by default {@link JsonSerde}</li>
+ * <li>{@code index.columns}: the top level columns to record statistics for</li>
+ * <li>{@code index.block.rows}: the number of lines in each block</li>
+ * </ul>
+ */
+public class JsonIndexWriter
+{
+    private static final int DEFAULT_BLOCK_ROWS = 10000;
+
+    private final SerDe serde;
+    private final StructObjectInspector rowInspector;
+    private final List<String> columnNames = new ArrayList<String>();
+    private final List<StructField> fields = new ArrayList<StructField>();
+    private final int blockRows;
+
+    public JsonIndexWriter(Properties table)
+            throws SerDeException
+    {
+        String serdeClass = table.getProperty("serde", JsonSerde.class.getName());
+        try {
+            serde = (SerDe) Class.forName(serdeClass).newInstance();
+        }
+        catch (Exception e) {
+            throw new SerDeException("cannot create serde: " + serdeClass, e);
+        }
+        serde.initialize(null, table);
+        rowInspector = (StructObjectInspector) serde.getObjectInspector();
+
+        String indexColumns = table.getProperty("index.columns");
+        if ((indexColumns == null) || indexColumns.trim().isEmpty()) {
+            throw new SerDeException("no index columns");
+        }
+        for (String column : indexColumns.split(",")) {
+            String name = ColumnNameMap.toLowerCase(column.trim());
+            StructField field = getField(name);
+            if (field == null) {
+                throw new SerDeException("unknown index column: " + name);
+            }
+            if (field.getFieldObjectInspector().getCategory() != ObjectInspector.Category.PRIMITIVE) {
+                throw new SerDeException("index column is not a primitive: " + name);
+            }
+            columnNames.add(name);
+            fields.add(field);
+        }
+
+        blockRows = Integer.parseInt(table.getProperty("index.block.rows", String.valueOf(DEFAULT_BLOCK_ROWS)));
+        if (blockRows <= 0) {
+            throw new SerDeException("index block rows must be positive: " + blockRows);
+        }
+    }
+
+    private StructField getField(String name)
+    {
+        for (StructField field : rowInspector.getAllStructFieldRefs()) {
+            if (field.getFieldName().equalsIgnoreCase(name)) {
+                return field;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Write the index for the file, replacing any existing index.
+     */
+    public JsonIndex writeIndex(FileSystem fs, Path file)
+            throws IOException, SerDeException
+    {
+        if (new CompressionCodecFactory(fs.getConf()).getCodec(file) != null) {
+            throw new IOException("cannot index compressed file: " + file);
+        }
+        FileStatus status = fs.getFileStatus(file);
+        List<JsonIndex.Block> blocks = new ArrayList<JsonIndex.Block>();
+        FSDataInputStream in = fs.open(file);
+        try {
+            readBlocks(in, blocks);
+        }
+        finally {
+            in.close();
+        }
+        JsonIndex index = new JsonIndex(status.getLen(), status.getModificationTime(), columnNames, blocks);
+        index.write(fs, file);
+        return index;
+    }
+
+    private void readBlocks(InputStream in, List<JsonIndex.Block> blocks)
+            throws IOException, SerDeException
+    {
+        LineReader reader = new LineReader(in);
+        Text line = new Text();
+        long position = 0;
+        long blockStart = 0;
+        long rowCount = 0;
+        long errorRows = 0;
+        Object[] min = new Object[fields.size()];
+        Object[] max = new Object[fields.size()];
+        while (true) {
+            int length = reader.readLine(line);
+            if (length == 0) {
+                break;
+            }
+            position += length;
+            rowCount++;
+            if (!addRow(line, min, max)) {
+                errorRows++;
+            }
+            if (rowCount == blockRows) {
+                blocks.add(new JsonIndex.Block(blockStart, position, rowCount, errorRows, min, max));
+                blockStart = position;
+                rowCount = 0;
+                errorRows = 0;
+                min = new Object[fields.size()];
+                max = new Object[fields.size()];
+            }
+        }
+        if (rowCount > 0) {
+            blocks.add(new JsonIndex.Block(blockStart, position, rowCount, errorRows, min, max));
+        }
+    }
+
+    /**
+     * Add the values of the row to the statistics.
+     *
+     * @return false if the row cannot be deserialized
+     */
+    private boolean addRow(Text line, Object[] min, Object[] max)
+    {
+        Object row;
+        try {
+            row = serde.deserialize(line);
+        }
+        catch (SerDeException e) {
+            return false;
+        }
+        if (row == null) {
+            return true;
+        }
+        for (int i = 0; i < fields.size(); i++) {
+            StructField field = fields.get(i);
+            Object value = getStatValue(rowInspector.getStructFieldData(row, field), (PrimitiveObjectInspector) field.getFieldObjectInspector());
+            if (value == null) {
+                continue;
+            }
+            if ((min[i] == null) || (compare(value, min[i]) < 0)) {
+                min[i] = value;
+            }
+            if ((max[i] == null) || (compare(value, max[i]) > 0)) {
+                max[i] = value;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Compare two statistic values of a column, with strings in the order
+     * used by {@link IndexPredicate}.
+     */
+    @SuppressWarnings("unchecked")
+    private static int compare(Object value, Object stat)
+    {
+        if (value instanceof String) {
+            return IndexPredicate.compareUtf8((String) value, (String) stat);
+        }
+        return ((Comparable<Object>) value).compareTo(stat);
+    }
+
+    /**
+     * Returns the value as a String, Long or Double, or null if the value
+     * is null or has no order.
+     */
+    private static Object getStatValue(Object data, PrimitiveObjectInspector inspector)
+    {
+        Object value = (data == null) ? null : inspector.getPrimitiveJavaObject(data);
+        if ((value instanceof String) || (value instanceof Long) || (value instanceof Double)) {
+            return value;
+        }
+        if ((value instanceof Byte) || (value instanceof Short) || (value instanceof Integer)) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        return null;
+    }
+
+    public static void main(String[] args)
+            throws Exception
+    {
+        if (args.length < 2) {
+            System.err.println("usage: JsonIndexWriter <table properties> <file>...");
+            System.exit(100);
+        }
+
+        Properties table = new Properties();
+        InputStream in = new FileInputStream(args[0]);
+        try {
+            table.load(in);
+        }
+        finally {
+            in.close();
+        }
+        JsonIndexWriter writer = new JsonIndexWriter(table);
+
+        Configuration configuration = new Configuration();
+        for (int i = 1; i < args.length; i++) {
+            Path file = new Path(args[i]);
+            JsonIndex index = writer.writeIndex(file.getFileSystem(configuration), file);
+            System.out.println(format("%s: %s blocks", file, index.getBlocks().size()));
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.CompressionCodec;
+import org.apache.hadoop.io.compress.CompressionCodecFactory;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.RecordReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static java.lang.String.format;
+
+/**
+ * Reads JSON objects that may span several lines or follow each other on
+ * the same line. Record boundaries are found by scanning the bytes for
+ * braces, brackets and quotes, without decoding characters. Anything
+ * between objects, such as whitespace, commas or the brackets of an
+ * enclosing array, is skipped. The key is the position of the record.
+ * <p>
+ * A split starts at the first object whose opening brace is at the start
+ * of a line, and ends before the first such object after the end of the
+ * split. JSON strings cannot contain line breaks, so this only requires
+ * that nested objects do not start at the beginning of a line.
+ * <p>
+ * Records longer than {@code json.record.maxlength}, which defaults to
+ * {@code mapred.linerecordreader.maxlength}, are skipped. The end of such a
+ * record is not known, for example when a string is not closed, so reading
+ * resumes at the next object that starts a line, as at the start of a split.
+ */
+public class JsonRecordReader
+        implements RecordReader<LongWritable, Text>
+{
+    public static final String MAX_LENGTH_CONF = "json.record.maxlength";
+    private static final Log LOG = LogFactory.getLog(JsonRecordReader.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final int maxLength;
+    private final InputStream in;
+    private final long start;
+    private final long end;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private long bufferStart;
+    private int bufferLength;
+    private int bufferPosition;
+    private boolean lineStart;
+    private boolean synced;
+    private long skippedBytes;
+
+    public JsonRecordReader(Configuration job, FileSplit split)
+            throws IOException
+    {
+        file = split.getPath();
+        maxLength = job.getInt(MAX_LENGTH_CONF, job.getInt("mapred.linerecordreader.maxlength", Integer.MAX_VALUE));
+        if (maxLength < 1) {
+            throw new IllegalArgumentException("max record length must be positive: " + maxLength);
+        }
+        FileSystem fs = file.getFileSystem(job);
+        FSDataInputStream fileIn = fs.open(file);
+        CompressionCodec codec = new CompressionCodecFactory(job).getCodec(file);
+        if (codec != null) {
+            in = codec.createInputStream(fileIn);
+            start = 0;
+            end = Long.MAX_VALUE;
+        }
+        else {
+            start = split.getStart();
+            end = start + split.getLength();
+            in = fileIn;
+            if (start > 0) {
+                // the previous byte tells whether the split starts a line
+                fileIn.seek(start - 1);
+                lineStart = (fileIn.read() == '\n');
+            }
+        }
+        bufferStart = start;
+        if (start == 0) {
+            lineStart = true;
+            synced = true;
+        }
+    }
+
+    @Override
+    public boolean next(LongWritable key, Text value)
+            throws IOException
+    {
+        long skipStart = -1;
+        while (true) {
+            long recordStart = findRecordStart();
+            if (skipStart >= 0) {
+                long skipped = ((recordStart < 0) ? getPos() : recordStart) - skipStart;
+                skippedBytes += skipped;
+                LOG.info(format("Skipped record longer than %s bytes at position %s in %s, dropping %s bytes", maxLength, skipStart, file, skipped));
+            }
+            if (recordStart < 0) {
+                return false;
+            }
+            key.set(recordStart);
+            value.clear();
+            if (readRecord(value)) {
+                return true;
+            }
+            skipStart = recordStart;
+        }
+    }
+
+    /**
+     * Returns the number of bytes dropped because records were too long.
+     */
+    public long getSkippedBytes()
+    {
+        return skippedBytes;
+    }
+
+    /**
+     * Advance to the opening brace of the next record in the split and
+     * return its position, or -1 if there are no more records.
+     */
+    private long findRecordStart()
+            throws IOException
+    {
+        while (true) {
+            if ((bufferPosition == bufferLength) && !fill()) {
+                return -1;
+            }
+            byte[] bytes = buffer;
+            int length = bufferLength;
+            for (int i = bufferPosition; i < length; i++) {
+                byte b = bytes[i];
+                if (b == '{') {
+                    long position = bufferStart + i;
+                    if (lineStart || synced) {
+                        if (lineStart && (position >= end)) {
+                            // the next split starts here
+                            bufferPosition = i;
+                            return -1;
+                        }
+                        synced = true;
+                        bufferPosition = i;
+                        lineStart = false;
+                        return position;
+                    }
+                }
+                lineStart = (b == '\n');
+            }
+            bufferPosition = length;
+        }
+    }
+
+    /**
+     * Append the object at the current position to the value. An object
+     * that is not closed before the end of the input is returned as is,
+     * so that the serde reports it.
+     *
+     * @return false if the object is longer than the maximum length, which
+     * leaves the reader positioned to look for the next object that starts
+     * a line
+     */
+    private boolean readRecord(Text value)
+            throws IOException
+    {
+        int depth = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        while (true) {
+            if ((bufferPosition == bufferLength) && !fill()) {
+                return true;
+            }
+            byte[] bytes = buffer;
+            int length = bufferLength;
+            int segmentStart = bufferPosition;
+            int available = maxLength - value.getLength();
+            int scanEnd = (length - segmentStart > available) ? (segmentStart + available) : length;
+            for (int i = segmentStart; i < scanEnd; i++) {
+                byte b = bytes[i];
+                if (inString) {
+                    if (escaped) {
+                        escaped = false;
+                    }
+                    else if (b == '\\') {
+                        escaped = true;
+                    }
+                    else if (b == '"') {
+                        inString = false;
+                    }
+                }
+                else if (b == '"') {
+                    inString = true;
+                }
+                else if ((b == '{') || (b == '[')) {
+                    depth++;
+                }
+                else if ((b == '}') || (b == ']')) {
+                    depth--;
+                    if (depth == 0) {
+                        value.append(bytes, segmentStart, i + 1 - segmentStart);
+                        bufferPosition = i + 1;
+                        return true;
+                    }
+                }
+            }
+            if (scanEnd < length) {
+                if (scanEnd > 0) {
+                    lineStart = (bytes[scanEnd - 1] == '\n');
+                }
+                else if (value.getLength() > 0) {
+                    lineStart = (value.getBytes()[value.getLength() - 1] == '\n');
+                }
+                else {
+                    // nothing was read, and the record starts with a brace
+                    lineStart = false;
+                }
+                value.clear();
+                bufferPosition = scanEnd;
+                synced = false;
+                return false;
+            }
+            value.append(bytes, segmentStart, length - segmentStart);
+            bufferPosition = length;
+        }
+    }
+
+    private boolean fill()
+            throws IOException
+    {
+        bufferStart += bufferLength;
+        bufferPosition = 0;
+        bufferLength = 0;
+        int read = in.read(buffer, 0, buffer.length);
+        if (read <= 0) {
+            return false;
+        }
+        bufferLength = read;
+        return true;
+    }
+
+    @Override
+    public LongWritable createKey()
+    {
+        return new LongWritable();
+    }
+
+    @Override
+    public Text createValue()
+    {
+        return new Text();
+    }
+
+    @Override
+    public long getPos()
+    {
+        return bufferStart + bufferPosition;
+    }
+
+    @Override
+    public float getProgress()
+    {
+        if (end == start) {
+            return 0.0f;
+        }
+        return Math.min(1.0f, (getPos() - start) / (float) (end - start));
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        in.close();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.typeinfo.ListTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.MapTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static java.lang.String.format;
+import static java.util.Arrays.asList;
+import static org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory.getStandardListObjectInspector;
+import static org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory.getStandardMapObjectInspector;
+import static org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorFactory.getStandardStructObjectInspector;
+import static org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory.getStructTypeInfo;
+import static org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils.getStandardJavaObjectInspectorFromTypeInfo;
+import static org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils.getStandardWritableObjectInspectorFromTypeInfo;
+import static org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils.getTypeInfosFromTypeString;
+
+/**
+ * The immutable parts of a table schema: the type, the row object
+ * inspector, the column name maps of the structs and the encoders. Hive
+ * initializes many serdes for the same table in a task, so schemas are
+ * cached for the JVM. Decoders keep per-row state and are not shared.
+ */
+final class JsonSchema
+{
+    private static final int MAX_CACHED_SCHEMAS = 256;
+    private static final ConcurrentMap<String, JsonSchema> SCHEMAS = new ConcurrentHashMap<String, JsonSchema>();
+
+    public enum InspectorType
+    {
+        STANDARD, WRITABLE, LAZY, LAZY_STRINGS
+    }
+
+    private final StructTypeInfo rootTypeInfo;
+    private final ObjectInspector rowObjectInspector;
+    private final Map<StructTypeInfo, ColumnNameMap> columnNameMaps = new HashMap<StructTypeInfo, ColumnNameMap>();
+    private final JsonEncoder.StructEncoder rootEncoder;
+
+    private JsonSchema(StructTypeInfo rootTypeInfo, InspectorType inspectorType)
+    {
+        this.rootTypeInfo = rootTypeInfo;
+        switch (inspectorType) {
+            case LAZY:
+                rowObjectInspector = LazyJsonObjectInspectorFactory.getLazyObjectInspector(rootTypeInfo, false);
+                break;
+            case LAZY_STRINGS:
+                rowObjectInspector = LazyJsonObjectInspectorFactory.getLazyObjectInspector(rootTypeInfo, true);
+                break;
+            case WRITABLE:
+                rowObjectInspector = getWritableObjectInspector(rootTypeInfo);
+                break;
+            default:
+                rowObjectInspector = getStandardJavaObjectInspectorFromTypeInfo(rootTypeInfo);
+                break;
+        }
+        addColumnNameMaps(rootTypeInfo);
+        rootEncoder = new JsonEncoder.StructEncoder(null, rootTypeInfo);
+    }
+
+    /**
+     * Returns the schema for the column names and types, compiling it if
+     * it is not already cached.
+     */
+    public static JsonSchema getSchema(String columnNames, String columnTypes, InspectorType inspectorType)
+            throws SerDeException
+    {
+        String key = inspectorType + "\n" + columnNames + "\n" + columnTypes;
+        JsonSchema schema = SCHEMAS.get(key);
+        if (schema != null) {
+            return schema;
+        }
+
+        List<String> names = asList(columnNames.split(","));
+        List<TypeInfo> types = getTypeInfosFromTypeString(columnTypes);
+        if (names.size() != types.size()) {
+            throw new SerDeException(format("columns size (%s) does not match column types size (%s)", names.size(), types.size()));
+        }
+        schema = new JsonSchema((StructTypeInfo) getStructTypeInfo(names, types), inspectorType);
+
+        if (SCHEMAS.size() >= MAX_CACHED_SCHEMAS) {
+            // a task only uses a few schemas, so this should never happen
+            SCHEMAS.clear();
+        }
+        JsonSchema existing = SCHEMAS.putIfAbsent(key, schema);
+        return (existing == null) ? schema : existing;
+    }
+
+    public StructTypeInfo getRootTypeInfo()
+    {
+        return rootTypeInfo;
+    }
+
+    public ObjectInspector getRowObjectInspector()
+    {
+        return rowObjectInspector;
+    }
+
+    public JsonEncoder.StructEncoder getRootEncoder()
+    {
+        return rootEncoder;
+    }
+
+    /**
+     * Returns the field name map for a struct of the schema.
+     */
+    public ColumnNameMap getColumnNameMap(StructTypeInfo typeInfo)
+    {
+        ColumnNameMap columnNameMap = columnNameMaps.get(typeInfo);
+        if (columnNameMap == null) {
+            return new ColumnNameMap(typeInfo.getAllStructFieldNames());
+        }
+        return columnNameMap;
+    }
+
+    private void addColumnNameMaps(TypeInfo typeInfo)
+    {
+        switch (typeInfo.getCategory()) {
+            case LIST:
+                addColumnNameMaps(((ListTypeInfo) typeInfo).getListElementTypeInfo());
+                break;
+            case MAP:
+                addColumnNameMaps(((MapTypeInfo) typeInfo).getMapValueTypeInfo());
+                break;
+            case STRUCT:
+                StructTypeInfo structTypeInfo = (StructTypeInfo) typeInfo;
+                if (!columnNameMaps.containsKey(structTypeInfo)) {
+                    columnNameMaps.put(structTypeInfo, new ColumnNameMap(structTypeInfo.getAllStructFieldNames()));
+                    for (TypeInfo fieldTypeInfo : structTypeInfo.getAllStructFieldTypeInfos()) {
+                        addColumnNameMaps(fieldTypeInfo);
+                    }
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Returns an inspector for rows that use Writable primitives. Map keys
+     * remain Java strings so that the case-insensitive lookup still works.
+     */
+    private static ObjectInspector getWritableObjectInspector(TypeInfo typeInfo)
+    {
+        switch (typeInfo.getCategory()) {
+            case LIST:
+                ListTypeInfo listTypeInfo = (ListTypeInfo) typeInfo;
+                return getStandardListObjectInspector(getWritableObjectInspector(listTypeInfo.getListElementTypeInfo()));
+            case MAP:
+                MapTypeInfo mapTypeInfo = (MapTypeInfo) typeInfo;
+                return getStandardMapObjectInspector(
+                        getStandardJavaObjectInspectorFromTypeInfo(mapTypeInfo.getMapKeyTypeInfo()),
+                        getWritableObjectInspector(mapTypeInfo.getMapValueTypeInfo()));
+            case STRUCT:
+                StructTypeInfo structTypeInfo = (StructTypeInfo) typeInfo;
+                List<ObjectInspector> fieldInspectors = new ArrayList<ObjectInspector>();
+                for (TypeInfo fieldTypeInfo : structTypeInfo.getAllStructFieldTypeInfos()) {
+                    fieldInspectors.add(getWritableObjectInspector(fieldTypeInfo));
+                }
+                return getStandardStructObjectInspector(structTypeInfo.getAllStructFieldNames(), fieldInspectors);
+            default:
+                return getStandardWritableObjectInspectorFromTypeInfo(typeInfo);
+        }
+    }
+}
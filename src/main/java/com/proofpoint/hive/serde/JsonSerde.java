@@ -17,44 +17,70 @@ package com.proofpoint.hive.serde;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
 import org.apache.hadoop.hive.serde2.SerDe;
 import org.apache.hadoop.hive.serde2.SerDeException;
 import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
-import org.apache.hadoop.hive.serde2.typeinfo.ListTypeInfo;
-import org.apache.hadoop.hive.serde2.typeinfo.MapTypeInfo;
-import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
 import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
-import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory;
 import org.apache.hadoop.io.BinaryComparable;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.Writable;
+import org.codehaus.jackson.JsonEncoding;
 import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.smile.SmileConstants;
+import org.codehaus.jackson.smile.SmileFactory;
+import org.codehaus.jackson.smile.SmileParser;
 
+import java.io.EOFException;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 import static java.lang.String.format;
 import static java.util.Arrays.asList;
-import static org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
-import static org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
-import static org.apache.hadoop.hive.serde2.typeinfo.TypeInfoFactory.getStructTypeInfo;
-import static org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils.getStandardJavaObjectInspectorFromTypeInfo;
-import static org.apache.hadoop.hive.serde2.typeinfo.TypeInfoUtils.getTypeInfosFromTypeString;
 
 public class JsonSerde
         implements SerDe
 {
+    // TableScanDesc.FILTER_TEXT_CONF_STR, which is not in the serde library
+    private static final String FILTER_TEXT_CONF_STR = "hive.io.filter.text";
+    private static final String MAPPING_PREFIX = "mapping.";
+
     private final JsonFactory jsonFactory = new ObjectMapper().getJsonFactory();
+    private final JsonFactory smileFactory = createSmileFactory();
     private ObjectInspector rowObjectInspector;
     protected StructTypeInfo rootTypeInfo;
-    protected ColumnNameMap columnNameMap;
+    protected StructDecoder rootDecoder;
+    private StructDecoder batchDecoder;
+    protected JsonEncoder.StructEncoder rootEncoder;
+    protected DecoderSettings decoderSettings;
     private boolean ignoreErrors;
+    private boolean streaming;
+    private boolean streamingDecode;
+    private boolean lazy;
+    private boolean reuseRows;
+    private RecordFormat recordFormat;
+    private boolean[] projectedColumns;
+    private ColumnMapping columnMapping;
+    private Object[] reusedRow;
+    private Object[] reusedDecodedRow;
+    private RowPrefilter prefilter;
+    private DecodeMetrics metrics;
+    private RecordLimits limits;
+    private WorkerDecoding workerDecoding;
+    private final DataOutputBuffer serializeBuffer = new DataOutputBuffer();
+    private final Text serializedText = new Text();
 
     @Override
     public void initialize(Configuration configuration, Properties table)
@@ -69,31 +95,243 @@ public class JsonSerde
             throw new SerDeException("table has no column types");
         }
 
-        List<String> columnNames = asList(columnNamesProperty.split(","));
-        List<TypeInfo> columnTypes = getTypeInfosFromTypeString(columnTypesProperty);
-        if (columnNames.size() != columnTypes.size()) {
-            throw new SerDeException(format("columns size (%s) does not match column types size (%s)", columnNames.size(), columnTypes.size()));
+        ignoreErrors = Boolean.parseBoolean(table.getProperty("errors.ignore"));
+        streaming = Boolean.parseBoolean(table.getProperty("parse.streaming"));
+        lazy = Boolean.parseBoolean(table.getProperty("parse.lazy"));
+        boolean lazyStrings = Boolean.parseBoolean(table.getProperty("strings.lazy"));
+        if (lazyStrings && !lazy) {
+            throw new SerDeException("lazy strings require lazy parsing");
+        }
+        reuseRows = Boolean.parseBoolean(table.getProperty("row.reuse"));
+        if (lazy && reuseRows) {
+            throw new SerDeException("row reuse is not supported with lazy parsing");
+        }
+        recordFormat = getRecordFormat(table.getProperty("record.format"));
+        if (lazy && (recordFormat == RecordFormat.SMILE)) {
+            throw new SerDeException("Smile records are not supported with lazy parsing");
+        }
+
+        JsonSchema.InspectorType inspectorType = JsonSchema.InspectorType.STANDARD;
+        if (lazy) {
+            inspectorType = lazyStrings ? JsonSchema.InspectorType.LAZY_STRINGS : JsonSchema.InspectorType.LAZY;
+        }
+        else if (reuseRows) {
+            inspectorType = JsonSchema.InspectorType.WRITABLE;
+        }
+        JsonSchema schema = JsonSchema.getSchema(columnNamesProperty, columnTypesProperty, inspectorType);
+        rootTypeInfo = schema.getRootTypeInfo();
+        rowObjectInspector = schema.getRowObjectInspector();
+        projectedColumns = getProjectedColumns(configuration, rootTypeInfo.getAllStructFieldNames().size());
+
+        limits = RecordLimits.create(table);
+        // lazy rows are decoded when they are accessed, so they are scanned first
+        decoderSettings = new DecoderSettings()
+                .setSchema(schema)
+                .setWritable(reuseRows)
+                .setLazyStrings(lazyStrings)
+                .setInternedColumns(getList(table.getProperty("columns.intern")))
+                .setLimits(lazy ? null : limits);
+        Map<String, String> mappings = getColumnMappings(table);
+        if (mappings.isEmpty()) {
+            columnMapping = null;
+            rootDecoder = new StructDecoder(null, rootTypeInfo, projectedColumns, decoderSettings);
+        }
+        else {
+            if (lazy) {
+                throw new SerDeException("column mappings are not supported with lazy parsing");
+            }
+            columnMapping = ColumnMapping.create(rootTypeInfo, mappings);
+            rootDecoder = new StructDecoder(null, columnMapping.getDecodedTypeInfo(), columnMapping.getDecodedProjection(projectedColumns), decoderSettings);
+        }
+        if (lazy || reuseRows) {
+            // batches always hold standard Java objects for complex columns
+            batchDecoder = new StructDecoder(null, rootTypeInfo, projectedColumns, new DecoderSettings().setSchema(schema).setLimits(limits));
         }
+        else {
+            batchDecoder = rootDecoder;
+        }
+        reusedRow = null;
+        reusedDecodedRow = null;
+        rootEncoder = schema.getRootEncoder();
+        prefilter = createPrefilter(configuration, table);
+        metrics = new DecodeMetrics(getIntProperty(table, "metrics.timing.sample", "timing sample interval"));
+        // a tree would be built before the decoders check the structure
+        streamingDecode = streaming || ((limits != null) && limits.hasStructureLimits());
+        // lazy and reused rows cannot be handed between threads
+        workerDecoding = (lazy || reuseRows) ? null : new WorkerDecoding(getClass(), configuration, table);
+    }
 
-        rootTypeInfo = (StructTypeInfo) getStructTypeInfo(columnNames, columnTypes);
-        rowObjectInspector = getStandardJavaObjectInspectorFromTypeInfo(rootTypeInfo);
+    /**
+     * Initialize a copy of a serde that decodes rows on a worker thread of
+     * {@link ParallelJsonRecordReader}.
+     */
+    void initializeWorker(Configuration configuration, Properties table)
+            throws SerDeException
+    {
+        initialize(configuration, table);
+        workerDecoding = null;
+    }
 
-        columnNameMap = new ColumnNameMap(rootTypeInfo);
+    /**
+     * Decode a record on a worker thread. Rows and errors are counted by
+     * the serde that receives the row.
+     */
+    Object decodeOnWorker(BinaryComparable binary)
+            throws SerDeException
+    {
+        return doDeserialize(binary);
+    }
 
-        ignoreErrors = Boolean.parseBoolean(table.getProperty("errors.ignore"));
+    /**
+     * Returns the prefilter for the filter.column and filter.values serde
+     * properties, or for the filter pushed down by Hive if filter.pushdown
+     * is set. A pushed filter is only used if it can be applied. Rows that
+     * the prefilter rejects are not decoded, so their other errors are not
+     * raised even if errors are not ignored.
+     */
+    private RowPrefilter createPrefilter(Configuration configuration, Properties table)
+            throws SerDeException
+    {
+        String column = table.getProperty("filter.column");
+        if (column != null) {
+            if (!isStringColumn(column)) {
+                throw new SerDeException("filter column is not a string column: " + column);
+            }
+            return new RowPrefilter(column, getList(table.getProperty("filter.values")));
+        }
+        if (Boolean.parseBoolean(table.getProperty("filter.pushdown")) && (configuration != null)) {
+            RowPrefilter pushed = RowPrefilter.fromFilterText(configuration.get(FILTER_TEXT_CONF_STR));
+            if ((pushed != null) && isStringColumn(pushed.getColumnName())) {
+                return pushed;
+            }
+        }
+        return null;
+    }
+
+    private boolean isStringColumn(String column)
+    {
+        int index = decoderSettings.getColumnNameMap(rootTypeInfo).get(column);
+        if ((index >= 0) && (columnMapping != null) && columnMapping.isMapped(index)) {
+            // the prefilter only reads top level fields
+            return false;
+        }
+        return (index >= 0) && rootTypeInfo.getAllStructFieldTypeInfos().get(index).equals(TypeInfoFactory.stringTypeInfo);
+    }
+
+    /**
+     * Returns the non-negative integer value of the serde property, or zero
+     * if it is not set.
+     */
+    static int getIntProperty(Properties table, String name, String description)
+            throws SerDeException
+    {
+        String value = table.getProperty(name);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            int intValue = Integer.parseInt(value.trim());
+            if (intValue >= 0) {
+                return intValue;
+            }
+        }
+        catch (NumberFormatException ignored) {
+        }
+        throw new SerDeException(format("invalid %s: %s", description, value));
+    }
+
+    private static List<String> getList(String value)
+    {
+        if ((value == null) || value.trim().isEmpty()) {
+            return Collections.emptyList();
+        }
+        return asList(value.split(","));
+    }
+
+    /**
+     * Returns the paths for the mapping.<column> serde properties, keyed by
+     * the lower case column name.
+     */
+    static Map<String, String> getColumnMappings(Properties table)
+    {
+        Map<String, String> mappings = new HashMap<String, String>();
+        for (String name : table.stringPropertyNames()) {
+            if (name.startsWith(MAPPING_PREFIX)) {
+                mappings.put(ColumnNameMap.toLowerCase(name.substring(MAPPING_PREFIX.length())), table.getProperty(name));
+            }
+        }
+        return mappings;
+    }
+
+    /**
+     * Returns the top-level columns that Hive will read, or null if all
+     * columns are needed. Hive uses an empty list to request all columns.
+     */
+    private static boolean[] getProjectedColumns(Configuration configuration, int columnCount)
+    {
+        if ((configuration == null) || (configuration.get(ColumnProjectionUtils.READ_COLUMN_IDS_CONF_STR) == null)) {
+            return null;
+        }
+        List<Integer> columnIds = ColumnProjectionUtils.getReadColumnIDs(configuration);
+        if (columnIds.isEmpty()) {
+            return null;
+        }
+        boolean[] projected = new boolean[columnCount];
+        for (int columnId : columnIds) {
+            if ((columnId < 0) || (columnId >= columnCount)) {
+                return null;
+            }
+            projected[columnId] = true;
+        }
+        return projected;
+    }
+
+    protected boolean isColumnProjected(int columnIndex)
+    {
+        return (projectedColumns == null) || projectedColumns[columnIndex];
     }
 
     @Override
     public Class<? extends Writable> getSerializedClass()
     {
-        throw new UnsupportedOperationException("serialization not supported");
+        return Text.class;
     }
 
+    /**
+     * Serialize the row as a single line of JSON. The returned Text is
+     * reused for the next row.
+     */
     @Override
     public Writable serialize(Object o, ObjectInspector objectInspector)
             throws SerDeException
     {
-        throw new UnsupportedOperationException("serialization not supported");
+        if (objectInspector.getCategory() != ObjectInspector.Category.STRUCT) {
+            throw new SerDeException("expected struct, found " + objectInspector.getTypeName());
+        }
+        if (columnMapping != null) {
+            throw new SerDeException("serialization is not supported with column mappings");
+        }
+
+        serializeBuffer.reset();
+        try {
+            JsonGenerator generator = jsonFactory.createJsonGenerator(serializeBuffer, JsonEncoding.UTF8);
+            writeRow(generator, o, (StructObjectInspector) objectInspector);
+            generator.close();
+        }
+        catch (IOException e) {
+            throw new SerDeException("error writing JSON", e);
+        }
+        serializedText.set(serializeBuffer.getData(), 0, serializeBuffer.getLength());
+        return serializedText;
+    }
+
+    /**
+     * Write the row as a JSON object with a field for each column.
+     */
+    protected void writeRow(JsonGenerator generator, Object row, StructObjectInspector inspector)
+            throws IOException, SerDeException
+    {
+        rootEncoder.encode(generator, row, inspector);
     }
 
     @Override
@@ -104,10 +342,13 @@ public class JsonSerde
             throw new SerDeException("expected BinaryComparable: " + writable.getClass().getName());
         }
 
+        BinaryComparable binary = (BinaryComparable) writable;
+        metrics.addRow(binary.getLength());
         try {
-            return doDeserialize((BinaryComparable) writable);
+            return doDeserialize(binary);
         }
         catch (SerDeException e) {
+            metrics.addError(e, ignoreErrors);
             if (ignoreErrors) {
                 return null;
             }
@@ -118,8 +359,54 @@ public class JsonSerde
     private Object doDeserialize(BinaryComparable binary)
             throws SerDeException
     {
+        if (limits != null) {
+            limits.checkLength(binary.getLength());
+            limits.startRecord();
+        }
+        if ((binary instanceof ParsedJsonText) && (workerDecoding != null)) {
+            ParsedJsonText parsed = (ParsedJsonText) binary;
+            // the reader decodes the following records on its worker threads
+            parsed.setWorkerDecoding(workerDecoding);
+            if (parsed.getDecodedBy() == workerDecoding) {
+                if (parsed.getRowError() != null) {
+                    throw parsed.getRowError();
+                }
+                return parsed.getRow();
+            }
+        }
+        if ((binary instanceof ParsedJsonText) && !lazy && (recordFormat != RecordFormat.SMILE)) {
+            ParsedJsonText parsed = (ParsedJsonText) binary;
+            if (parsed.getError() != null) {
+                throw new SerDeException("error parsing JSON", parsed.getError());
+            }
+            if (parsed.getTree() != null) {
+                // parsed by ParallelJsonInputFormat
+                if (!metrics.isSampled()) {
+                    return buildStruct(parsed.getTree());
+                }
+                long start = System.nanoTime();
+                Object row = buildStruct(parsed.getTree());
+                metrics.addTiming(0, System.nanoTime() - start);
+                return row;
+            }
+        }
         try {
-            JsonParser jsonParser = jsonFactory.createJsonParser(binary.getBytes(), 0, binary.getLength());
+            if ((prefilter != null) && !prefilter.mightMatch(createRecordParser(binary.getBytes(), binary.getLength()))) {
+                // the row would be discarded by the query
+                metrics.addFilteredRow();
+                return null;
+            }
+            checkLazyStructure(binary.getBytes(), binary.getLength());
+            if (metrics.isSampled()) {
+                return timedDeserialize(binary);
+            }
+            JsonParser jsonParser = createRecordParser(binary.getBytes(), binary.getLength());
+            if (lazy) {
+                return buildLazyStruct(jsonParser, binary.getBytes(), binary.getLength());
+            }
+            if (streamingDecode) {
+                return buildStruct(jsonParser);
+            }
             return buildStruct(jsonParser.readValueAsTree());
         }
         catch (IOException e) {
@@ -127,138 +414,352 @@ public class JsonSerde
         }
     }
 
-    @Override
-    public ObjectInspector getObjectInspector()
-            throws SerDeException
+    /**
+     * Deserialize the record and record the time spent. Parsing is only
+     * timed separately when the row is built from a tree.
+     */
+    private Object timedDeserialize(BinaryComparable binary)
+            throws IOException, SerDeException
     {
-        return rowObjectInspector;
+        long start = System.nanoTime();
+        JsonParser jsonParser = createRecordParser(binary.getBytes(), binary.getLength());
+        if (lazy || streamingDecode) {
+            Object row = lazy ? buildLazyStruct(jsonParser, binary.getBytes(), binary.getLength()) : buildStruct(jsonParser);
+            metrics.addTiming(0, System.nanoTime() - start);
+            return row;
+        }
+        JsonNode tree = jsonParser.readValueAsTree();
+        long parsed = System.nanoTime();
+        Object row = buildStruct(tree);
+        metrics.addTiming(parsed - start, System.nanoTime() - parsed);
+        return row;
     }
 
-    protected Object buildStruct(JsonNode tree)
-            throws SerDeException
+    /**
+     * Create a batch that can hold up to the given number of rows, with a
+     * vector for each projected column.
+     */
+    public RowBatch createRowBatch(int capacity)
     {
-        return processFields(tree);
+        return new RowBatch(rootTypeInfo, projectedColumns, capacity);
     }
 
-    protected Object[] processFields(JsonNode tree)
+    /**
+     * Deserialize the records into the column vectors of the batch, which
+     * must have been created by this serde. A record that has an error, or
+     * that is rejected by the prefilter, is a row with all columns null if
+     * errors are ignored, as in {@link #deserialize}.
+     *
+     * @param count the number of records, which must not exceed the
+     * capacity of the batch
+     */
+    public void deserializeBatch(BinaryComparable[] records, int count, RowBatch batch)
             throws SerDeException
     {
-        return getStructNodeValue(null, tree, rootTypeInfo);
+        if ((count < 0) || (count > batch.getCapacity()) || (count > records.length)) {
+            throw new SerDeException(format("invalid batch size %s for capacity %s", count, batch.getCapacity()));
+        }
+        if (columnMapping != null) {
+            throw new SerDeException("batch deserialization is not supported with column mappings");
+        }
+        if (batch.getColumnCount() != rootDecoder.getFieldCount()) {
+            throw new SerDeException("batch was not created for this table");
+        }
+
+        batch.reset(count);
+        for (int row = 0; row < count; row++) {
+            metrics.addRow(records[row].getLength());
+            try {
+                deserializeBatchRow(records[row], batch, row);
+            }
+            catch (SerDeException e) {
+                metrics.addError(e, ignoreErrors);
+                if (!ignoreErrors) {
+                    throw e;
+                }
+                batch.setNullRow(row);
+            }
+        }
     }
 
-    private Object getNodeValue(String columnName, JsonNode node, TypeInfo typeInfo)
+    private void deserializeBatchRow(BinaryComparable record, RowBatch batch, int row)
             throws SerDeException
     {
-        if (node.isNull()) {
-            return null;
+        byte[] bytes = record.getBytes();
+        int length = record.getLength();
+        if (limits != null) {
+            limits.checkLength(length);
+            limits.startRecord();
         }
-        switch (typeInfo.getCategory()) {
-            case LIST:
-                return getListNodeValue(columnName, node, (ListTypeInfo) typeInfo);
-            case MAP:
-                return getMapNodeValue(columnName, node, (MapTypeInfo) typeInfo);
-            case PRIMITIVE:
-                return getPrimitiveNodeValue(columnName, node, (PrimitiveTypeInfo) typeInfo);
-            case STRUCT:
-                return getStructNodeValue(columnName, node, (StructTypeInfo) typeInfo);
-            default:
-                throw new SerDeException(format("unexpected type category (%s) for column: %s", typeInfo.getCategory(), columnName));
+        try {
+            if ((prefilter != null) && !prefilter.mightMatch(createRecordParser(bytes, length))) {
+                metrics.addFilteredRow();
+                batch.setNullRow(row);
+                return;
+            }
+            JsonParser jsonParser = createRecordParser(bytes, length);
+            if (jsonParser.nextToken() == null) {
+                throw new EOFException("No content to map to Object due to end of input");
+            }
+            batchDecoder.decodeVectors(jsonParser, bytes, length, batch.getColumns(), row);
+        }
+        catch (IOException e) {
+            throw new SerDeException("error parsing JSON", e);
         }
     }
 
-    private Object getListNodeValue(String columnName, JsonNode node, ListTypeInfo typeInfo)
-            throws SerDeException
+    /**
+     * Reject a lazily parsed record if it exceeds the structure limits,
+     * before it is decoded. Other records are checked by the decoders.
+     */
+    private void checkLazyStructure(byte[] bytes, int length)
+            throws IOException, SerDeException
     {
-        if (!node.isArray()) {
-            throw new SerDeException(format("expected list, found %s for column %s", node.getClass().getSimpleName(), columnName));
-        }
-        List<Object> list = new ArrayList<Object>(node.size());
-        for (JsonNode item : node) {
-            list.add(getNodeValue(columnName, item, typeInfo.getListElementTypeInfo()));
+        if (lazy && (limits != null) && limits.hasStructureLimits()) {
+            limits.checkStructure(createRecordParser(bytes, length));
         }
-        return list;
     }
 
-    private Object getMapNodeValue(String columnName, JsonNode node, MapTypeInfo typeInfo)
-            throws SerDeException
+    /**
+     * Create a parser for a complete record, which is JSON text or Smile
+     * depending on the record format.
+     */
+    private JsonParser createRecordParser(byte[] bytes, int length)
+            throws IOException, SerDeException
     {
-        if (!node.isObject()) {
-            throw new SerDeException(format("expected map, found %s for column %s", node.getClass().getSimpleName(), columnName));
+        if (!isSmile(bytes, length)) {
+            return jsonFactory.createJsonParser(bytes, 0, length);
         }
-        if (typeInfo.getMapKeyTypeInfo().getCategory() != Category.PRIMITIVE) {
-            throw new SerDeException("map key is not a primitive: " + typeInfo.getMapKeyTypeInfo());
+        if (lazy) {
+            // lazy parsing depends on the byte offsets of JSON text
+            throw new SerDeException("Smile records are not supported with lazy parsing");
         }
-        PrimitiveTypeInfo keyType = (PrimitiveTypeInfo) typeInfo.getMapKeyTypeInfo();
-        if (keyType.getPrimitiveCategory() != PrimitiveCategory.STRING) {
-            throw new SerDeException(format("expected STRING map key, found %s for column %s", keyType.getPrimitiveCategory(), columnName));
+        return smileFactory.createJsonParser(bytes, 0, length);
+    }
+
+    private boolean isSmile(byte[] bytes, int length)
+    {
+        switch (recordFormat) {
+            case SMILE:
+                return true;
+            case JSON:
+                return false;
+            default:
+                return hasSmileHeader(bytes, length);
         }
+    }
 
-        Map<String, Object> map = new CaseInsensitiveMap<Object>();
-        Iterator<Map.Entry<String, JsonNode>> fields = node.getFields();
-        while (fields.hasNext()) {
-            Map.Entry<String, JsonNode> entry = fields.next();
-            String key = entry.getKey();
-            JsonNode value = entry.getValue();
+    static boolean hasSmileHeader(byte[] bytes, int length)
+    {
+        return (length >= 3) &&
+                (bytes[0] == SmileConstants.HEADER_BYTE_1) &&
+                (bytes[1] == SmileConstants.HEADER_BYTE_2) &&
+                (bytes[2] == SmileConstants.HEADER_BYTE_3);
+    }
 
-            Object object = getNodeValue(columnName, value, typeInfo.getMapValueTypeInfo());
-            if (map.put(key, object) != null) {
-                throw new SerDeException(format("column %s case-insensitive map already contains key: %s", columnName, key));
+    private static JsonFactory createSmileFactory()
+    {
+        // records are detected by the header, but may omit it when the format is set
+        SmileFactory factory = new SmileFactory();
+        factory.configure(SmileParser.Feature.REQUIRE_HEADER, false);
+        factory.setCodec(new ObjectMapper(factory));
+        return factory;
+    }
+
+    private static RecordFormat getRecordFormat(String value)
+            throws SerDeException
+    {
+        if (value == null) {
+            return RecordFormat.AUTO;
+        }
+        for (RecordFormat candidate : RecordFormat.values()) {
+            if (candidate.name().equalsIgnoreCase(value.trim())) {
+                return candidate;
             }
         }
-        return map;
+        throw new SerDeException("invalid record format: " + value);
+    }
+
+    JsonParser createJsonParser(byte[] bytes, int offset, int length)
+            throws IOException
+    {
+        return jsonFactory.createJsonParser(bytes, offset, length);
+    }
+
+    boolean isIgnoreErrors()
+    {
+        return ignoreErrors;
+    }
+
+    /**
+     * Returns the number of struct fields whose position matched the field
+     * order of the previous object, for all structs in the table.
+     */
+    public long getFieldOrderPredictionHits()
+    {
+        return getPredictionCounts()[0];
+    }
+
+    /**
+     * Returns the number of struct fields that required a name lookup
+     * because the field order did not match the previous object.
+     */
+    public long getFieldOrderPredictionMisses()
+    {
+        return getPredictionCounts()[1];
+    }
+
+    /**
+     * Returns the number of values of the column that were found in its
+     * intern cache, or zero if the column is not interned. For a map column
+     * this includes the keys.
+     */
+    public long getInternCacheHits(String columnName)
+    {
+        StringInternCache cache = decoderSettings.getInternCache(columnName);
+        StringInternCache keyCache = decoderSettings.getKeyInternCache(columnName);
+        return ((cache == null) ? 0 : cache.getHits()) + ((keyCache == null) ? 0 : keyCache.getHits());
+    }
+
+    /**
+     * Returns the number of values of the column that were not found in
+     * its intern cache, or zero if the column is not interned. For a map
+     * column this includes the keys.
+     */
+    public long getInternCacheMisses(String columnName)
+    {
+        StringInternCache cache = decoderSettings.getInternCache(columnName);
+        StringInternCache keyCache = decoderSettings.getKeyInternCache(columnName);
+        return ((cache == null) ? 0 : cache.getMisses()) + ((keyCache == null) ? 0 : keyCache.getMisses());
+    }
+
+    /**
+     * Returns the number of rows that the prefilter rejected without
+     * parsing them.
+     */
+    public long getPrefilterRejectedRows()
+    {
+        return (prefilter == null) ? 0 : prefilter.getRejectedRows();
+    }
+
+    /**
+     * Returns the decode metrics of this serde.
+     */
+    public DecodeMetrics getMetrics()
+    {
+        return metrics;
+    }
+
+    private long[] getPredictionCounts()
+    {
+        long[] counts = new long[2];
+        rootDecoder.addPredictionCounts(counts);
+        return counts;
     }
 
-    private Object getPrimitiveNodeValue(String columnName, JsonNode node, PrimitiveTypeInfo typeInfo)
+    @Override
+    public ObjectInspector getObjectInspector()
             throws SerDeException
     {
-        if (!node.isValueNode()) {
-            throw new SerDeException(format("expected primitive, found %s for column %s", node.getClass().getSimpleName(), columnName));
-        }
-        switch (typeInfo.getPrimitiveCategory()) {
-            case VOID:
-                throw new SerDeException("cannot deserialize to VOID type for column " + columnName);
-            case UNKNOWN:
-                throw new SerDeException("cannot deserialize to UNKNOWN type for column " + columnName);
-            case BOOLEAN:
-                return node.getBooleanValue();
-            case BYTE:
-                return (byte) node.getIntValue();
-            case SHORT:
-                return (short) node.getIntValue();
-            case INT:
-                return node.getIntValue();
-            case LONG:
-                return node.getLongValue();
-            case FLOAT:
-                return (float) node.getDoubleValue();
-            case DOUBLE:
-                return node.getDoubleValue();
-            case STRING:
-                return node.getTextValue();
-            default:
-                throw new SerDeException("unhandled primitive type: " + typeInfo.getPrimitiveCategory());
-        }
+        return rowObjectInspector;
     }
 
-    private Object[] getStructNodeValue(String columnName, JsonNode node, StructTypeInfo typeInfo)
+    protected Object buildStruct(JsonNode tree)
             throws SerDeException
     {
-        Map<String, Integer> columnNames = columnNameMap.getColumnNames(typeInfo);
-        List<TypeInfo> fieldTypes = typeInfo.getAllStructFieldTypeInfos();
+        return processFields(tree);
+    }
 
-        Object[] struct = new Object[fieldTypes.size()];
-        Iterator<Map.Entry<String, JsonNode>> fields = node.getFields();
-        while (fields.hasNext()) {
-            Map.Entry<String, JsonNode> entry = fields.next();
-            String key = entry.getKey().toLowerCase();
-            JsonNode value = entry.getValue();
+    protected Object[] processFields(JsonNode tree)
+            throws SerDeException
+    {
+        try {
+            return processFields(tree.traverse());
+        }
+        catch (IOException e) {
+            throw new SerDeException("error parsing JSON", e);
+        }
+    }
+
+    /**
+     * Build the row directly from the parser tokens without creating a tree.
+     * The result must be identical to {@link #buildStruct(JsonNode)}.
+     */
+    protected Object buildStruct(JsonParser jsonParser)
+            throws IOException, SerDeException
+    {
+        return processFields(jsonParser);
+    }
+
+    protected Object[] processFields(JsonParser jsonParser)
+            throws IOException, SerDeException
+    {
+        if (jsonParser.nextToken() == null) {
+            // same error that the tree parser reports
+            throw new EOFException("No content to map to Object due to end of input");
+        }
+        return decodeRow(jsonParser);
+    }
 
-            Integer columnIndex = columnNames.get(key);
-            if (columnIndex != null) {
-                String structColumn = (columnName == null) ? key : (columnName + "." + key);
-                struct[columnIndex] = getNodeValue(structColumn, value, fieldTypes.get(columnIndex));
+    /**
+     * Decode the object at the current token into a row, reusing the
+     * previous row if rows are reused.
+     */
+    protected Object[] decodeRow(JsonParser jsonParser)
+            throws IOException, SerDeException
+    {
+        Object[] row;
+        if (columnMapping == null) {
+            row = rootDecoder.decodeStruct(jsonParser, reusedRow);
+        }
+        else {
+            Object[] decoded = rootDecoder.decodeStruct(jsonParser, reusedDecodedRow);
+            row = columnMapping.extractColumns(decoded, reusedRow);
+            if (reuseRows) {
+                reusedDecodedRow = decoded;
             }
         }
-        return struct;
+        if (reuseRows) {
+            reusedRow = row;
+        }
+        return row;
+    }
+
+    /**
+     * Returns the value for a string column, as a Text when rows are reused.
+     *
+     * @param previous the previous value of the column, which may be reused
+     */
+    protected Object getStringValue(String value, Object previous)
+    {
+        if (!reuseRows) {
+            return value;
+        }
+        Text text = (previous instanceof Text) ? (Text) previous : new Text();
+        text.set(value);
+        return text;
+    }
+
+    /**
+     * Build a row that only records where the record starts. Fields are
+     * parsed from the input bytes the first time they are accessed.
+     */
+    private Object buildLazyStruct(JsonParser jsonParser, byte[] bytes, int length)
+            throws IOException, SerDeException
+    {
+        if (jsonParser.nextToken() == null) {
+            throw new EOFException("No content to map to Object due to end of input");
+        }
+        if (jsonParser.getCurrentToken() != JsonToken.START_OBJECT) {
+            // the tree path treats any other node as an object without fields
+            jsonParser.skipChildren();
+            return new LazyJsonStruct(this, rootDecoder);
+        }
+        return rootDecoder.decodeLazy(jsonParser, this, bytes, length);
+    }
+
+    private enum RecordFormat
+    {
+        AUTO, JSON, SMILE
     }
 }
@@ -0,0 +1,244 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.mapred.Reporter;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The totals of the decode metrics of all serdes in the JVM. They are
+ * exported as an MBean named {@code com.proofpoint.hive.serde:name=JsonSerdeMetrics},
+ * and as task counters by the record readers of the input formats in this
+ * project. Only the first {@value #MAX_TYPE_ERROR_COUNTERS} columns with type
+ * errors get their own counter, because jobs have a limit on the number of
+ * counters; the rest are counted together. The MBean has all columns.
+ */
+public class JsonSerdeMetrics
+        implements JsonSerdeMetricsMBean
+{
+    public static final String COUNTER_GROUP = "JsonSerde";
+    public static final String TYPE_ERROR_COUNTER_GROUP = "JsonSerde Type Errors";
+    public static final String OTHER_COLUMNS_COUNTER = "Other columns";
+    public static final int MAX_TYPE_ERROR_COUNTERS = 20;
+    private static final String OBJECT_NAME = "com.proofpoint.hive.serde:name=JsonSerdeMetrics";
+    private static final JsonSerdeMetrics INSTANCE = createInstance();
+
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong filteredRows = new AtomicLong();
+    private final AtomicLong parseErrors = new AtomicLong();
+    private final AtomicLong typeErrors = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> typeErrorsByColumn = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong otherErrors = new AtomicLong();
+    private final AtomicLong ignoredErrors = new AtomicLong();
+    private final AtomicLong sampledRows = new AtomicLong();
+    private final AtomicLong parseNanos = new AtomicLong();
+    private final AtomicLong buildNanos = new AtomicLong();
+
+    // the values last published as counters
+    private final Map<String, Long> published = new HashMap<String, Long>();
+    // the columns that have their own type error counter
+    private final Set<String> countedColumns = new HashSet<String>();
+
+    private static JsonSerdeMetrics createInstance()
+    {
+        JsonSerdeMetrics metrics = new JsonSerdeMetrics();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+            }
+        }
+        catch (JMException e) {
+            // metrics are still available as counters
+        }
+        return metrics;
+    }
+
+    public static JsonSerdeMetrics getInstance()
+    {
+        return INSTANCE;
+    }
+
+    void addRow(int length)
+    {
+        rows.incrementAndGet();
+        bytes.addAndGet(length);
+    }
+
+    void addFilteredRow()
+    {
+        filteredRows.incrementAndGet();
+    }
+
+    void addTiming(long parseNanos, long buildNanos)
+    {
+        sampledRows.incrementAndGet();
+        this.parseNanos.addAndGet(parseNanos);
+        this.buildNanos.addAndGet(buildNanos);
+    }
+
+    void addParseError()
+    {
+        parseErrors.incrementAndGet();
+    }
+
+    void addTypeError(String columnName)
+    {
+        typeErrors.incrementAndGet();
+        AtomicLong count = typeErrorsByColumn.get(columnName);
+        if (count == null) {
+            AtomicLong existing = typeErrorsByColumn.putIfAbsent(columnName, new AtomicLong());
+            count = (existing == null) ? typeErrorsByColumn.get(columnName) : existing;
+        }
+        count.incrementAndGet();
+    }
+
+    void addOtherError()
+    {
+        otherErrors.incrementAndGet();
+    }
+
+    void addIgnoredError()
+    {
+        ignoredErrors.incrementAndGet();
+    }
+
+    /**
+     * Increment the task counters by the change in the totals since they
+     * were last published.
+     */
+    public synchronized void publishCounters(Reporter reporter)
+    {
+        publish(reporter, COUNTER_GROUP, "Rows", rows.get());
+        publish(reporter, COUNTER_GROUP, "Bytes", bytes.get());
+        publish(reporter, COUNTER_GROUP, "Filtered rows", filteredRows.get());
+        publish(reporter, COUNTER_GROUP, "Parse errors", parseErrors.get());
+        publish(reporter, COUNTER_GROUP, "Type errors", typeErrors.get());
+        publish(reporter, COUNTER_GROUP, "Other errors", otherErrors.get());
+        publish(reporter, COUNTER_GROUP, "Ignored errors", ignoredErrors.get());
+        publish(reporter, COUNTER_GROUP, "Sampled rows", sampledRows.get());
+        publish(reporter, COUNTER_GROUP, "Parse millis", parseNanos.get() / 1000000);
+        publish(reporter, COUNTER_GROUP, "Build millis", buildNanos.get() / 1000000);
+        long otherColumns = 0;
+        for (Map.Entry<String, AtomicLong> entry : typeErrorsByColumn.entrySet()) {
+            String column = entry.getKey();
+            if (!countedColumns.contains(column) && (countedColumns.size() < MAX_TYPE_ERROR_COUNTERS)) {
+                countedColumns.add(column);
+            }
+            if (countedColumns.contains(column)) {
+                publish(reporter, TYPE_ERROR_COUNTER_GROUP, column, entry.getValue().get());
+            }
+            else {
+                otherColumns += entry.getValue().get();
+            }
+        }
+        publish(reporter, TYPE_ERROR_COUNTER_GROUP, OTHER_COLUMNS_COUNTER, otherColumns);
+    }
+
+    private void publish(Reporter reporter, String group, String counter, long value)
+    {
+        String key = group + "\n" + counter;
+        Long previous = published.get(key);
+        long delta = value - ((previous == null) ? 0 : previous);
+        if (delta != 0) {
+            reporter.incrCounter(group, counter, delta);
+            published.put(key, value);
+        }
+    }
+
+    @Override
+    public long getRows()
+    {
+        return rows.get();
+    }
+
+    @Override
+    public long getBytes()
+    {
+        return bytes.get();
+    }
+
+    @Override
+    public long getFilteredRows()
+    {
+        return filteredRows.get();
+    }
+
+    @Override
+    public long getParseErrors()
+    {
+        return parseErrors.get();
+    }
+
+    @Override
+    public long getTypeErrors()
+    {
+        return typeErrors.get();
+    }
+
+    @Override
+    public Map<String, Long> getTypeErrorsByColumn()
+    {
+        Map<String, Long> counts = new HashMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : typeErrorsByColumn.entrySet()) {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+        return counts;
+    }
+
+    @Override
+    public long getOtherErrors()
+    {
+        return otherErrors.get();
+    }
+
+    @Override
+    public long getIgnoredErrors()
+    {
+        return ignoredErrors.get();
+    }
+
+    @Override
+    public long getSampledRows()
+    {
+        return sampledRows.get();
+    }
+
+    @Override
+    public long getParseNanos()
+    {
+        return parseNanos.get();
+    }
+
+    @Override
+    public long getBuildNanos()
+    {
+        return buildNanos.get();
+    }
+}
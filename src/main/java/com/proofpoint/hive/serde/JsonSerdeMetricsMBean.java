@@ -0,0 +1,46 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import java.util.Map;
+
+/**
+ * The totals of the decode metrics of all serdes in the JVM.
+ */
+public interface JsonSerdeMetricsMBean
+{
+    long getRows();
+
+    long getBytes();
+
+    long getFilteredRows();
+
+    long getParseErrors();
+
+    long getTypeErrors();
+
+    Map<String, Long> getTypeErrorsByColumn();
+
+    long getOtherErrors();
+
+    long getIgnoredErrors();
+
+    long getSampledRows();
+
+    long getParseNanos();
+
+    long getBuildNanos();
+}
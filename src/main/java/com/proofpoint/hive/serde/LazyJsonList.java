@@ -0,0 +1,112 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+class LazyJsonList
+        extends LazyJsonObject
+{
+    private final JsonDecoder elementDecoder;
+    private final List<Object> values = new ArrayList<Object>();
+    private int[] offsets;
+
+    LazyJsonList(JsonSerde serde, byte[] bytes, int start, int end, ListDecoder decoder)
+    {
+        super(serde, bytes, start, end);
+        this.elementDecoder = decoder.getElementDecoder();
+    }
+
+    public int getLength()
+    {
+        ensureParsed();
+        return values.size();
+    }
+
+    public Object getElement(int index)
+    {
+        ensureParsed();
+        if ((index < 0) || (index >= values.size())) {
+            return null;
+        }
+        if ((offsets != null) && (offsets[index] >= 0)) {
+            int offset = offsets[index];
+            offsets[index] = -1;
+            values.set(index, parseValueAt(offset, elementDecoder));
+        }
+        return values.get(index);
+    }
+
+    public List<Object> getList()
+    {
+        int length = getLength();
+        for (int i = 0; i < length; i++) {
+            getElement(i);
+        }
+        return values;
+    }
+
+    @Override
+    protected void parse(JsonParser parser)
+            throws IOException, SerDeException
+    {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (elementDecoder.isDeferrable(parser.getCurrentToken())) {
+                setOffset(values.size(), getTokenOffset(parser));
+                values.add(null);
+            }
+            else {
+                values.add(getValue(parser, elementDecoder));
+            }
+        }
+    }
+
+    private void setOffset(int index, int offset)
+    {
+        if (offsets == null) {
+            offsets = new int[Math.max(8, index + 1)];
+            fillUnset(0);
+        }
+        else if (index >= offsets.length) {
+            int length = offsets.length;
+            int[] newOffsets = new int[Math.max(length * 2, index + 1)];
+            System.arraycopy(offsets, 0, newOffsets, 0, length);
+            offsets = newOffsets;
+            fillUnset(length);
+        }
+        offsets[index] = offset;
+    }
+
+    private void fillUnset(int from)
+    {
+        for (int i = from; i < offsets.length; i++) {
+            offsets[i] = -1;
+        }
+    }
+
+    @Override
+    protected void clear()
+    {
+        values.clear();
+        offsets = null;
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+
+import java.util.List;
+
+public class LazyJsonListObjectInspector
+        implements ListObjectInspector
+{
+    private final ObjectInspector elementInspector;
+
+    LazyJsonListObjectInspector(ObjectInspector elementInspector)
+    {
+        this.elementInspector = elementInspector;
+    }
+
+    @Override
+    public String getTypeName()
+    {
+        return Constants.LIST_TYPE_NAME + "<" + elementInspector.getTypeName() + ">";
+    }
+
+    @Override
+    public Category getCategory()
+    {
+        return Category.LIST;
+    }
+
+    @Override
+    public ObjectInspector getListElementObjectInspector()
+    {
+        return elementInspector;
+    }
+
+    @Override
+    public Object getListElement(Object data, int index)
+    {
+        if (data == null) {
+            return null;
+        }
+        return ((LazyJsonList) data).getElement(index);
+    }
+
+    @Override
+    public int getListLength(Object data)
+    {
+        if (data == null) {
+            return -1;
+        }
+        return ((LazyJsonList) data).getLength();
+    }
+
+    @Override
+    public List<?> getList(Object data)
+    {
+        if (data == null) {
+            return null;
+        }
+        return ((LazyJsonList) data).getList();
+    }
+}
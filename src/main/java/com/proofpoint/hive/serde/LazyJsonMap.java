@@ -0,0 +1,58 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.codehaus.jackson.JsonParser;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Lazily parsed map. All entries are parsed on first access, because a
+ * key lookup has to see every key, but nested containers stay lazy.
+ */
+class LazyJsonMap
+        extends LazyJsonObject
+{
+    private final MapDecoder decoder;
+    private final CaseInsensitiveMap<Object> map = new CaseInsensitiveMap<Object>();
+
+    LazyJsonMap(JsonSerde serde, byte[] bytes, int start, int end, MapDecoder decoder)
+    {
+        super(serde, bytes, start, end);
+        this.decoder = decoder;
+    }
+
+    public Map<String, Object> getMap()
+    {
+        ensureParsed();
+        return map;
+    }
+
+    @Override
+    protected void parse(JsonParser parser)
+            throws IOException, SerDeException
+    {
+        decoder.decodeEntries(parser, map, this);
+    }
+
+    @Override
+    protected void clear()
+    {
+        map.clear();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.objectinspector.MapObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+
+import java.util.Map;
+
+public class LazyJsonMapObjectInspector
+        implements MapObjectInspector
+{
+    private final ObjectInspector keyInspector;
+    private final ObjectInspector valueInspector;
+
+    LazyJsonMapObjectInspector(ObjectInspector keyInspector, ObjectInspector valueInspector)
+    {
+        this.keyInspector = keyInspector;
+        this.valueInspector = valueInspector;
+    }
+
+    @Override
+    public String getTypeName()
+    {
+        return Constants.MAP_TYPE_NAME + "<" + keyInspector.getTypeName() + "," + valueInspector.getTypeName() + ">";
+    }
+
+    @Override
+    public Category getCategory()
+    {
+        return Category.MAP;
+    }
+
+    @Override
+    public ObjectInspector getMapKeyObjectInspector()
+    {
+        return keyInspector;
+    }
+
+    @Override
+    public ObjectInspector getMapValueObjectInspector()
+    {
+        return valueInspector;
+    }
+
+    @Override
+    public Object getMapValueElement(Object data, Object key)
+    {
+        if ((data == null) || (key == null)) {
+            return null;
+        }
+        return ((LazyJsonMap) data).getMap().get(key);
+    }
+
+    @Override
+    public Map<?, ?> getMap(Object data)
+    {
+        if (data == null) {
+            return null;
+        }
+        return ((LazyJsonMap) data).getMap();
+    }
+
+    @Override
+    public int getMapSize(Object data)
+    {
+        if (data == null) {
+            return -1;
+        }
+        return ((LazyJsonMap) data).getMap().size();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.impl.Utf8StreamParser;
+
+import java.io.IOException;
+
+/**
+ * Base class for lazily parsed JSON containers. The container remembers
+ * where its value starts in the input bytes and parses its children the
+ * first time they are needed. The input bytes must not change while the
+ * row is in use, which Hive guarantees until the next record is read.
+ */
+abstract class LazyJsonObject
+{
+    protected final JsonSerde serde;
+    protected final byte[] bytes;
+    protected final int start;
+    protected final int end;
+    private boolean parsed;
+
+    protected LazyJsonObject(JsonSerde serde, byte[] bytes, int start, int end)
+    {
+        this.serde = serde;
+        this.bytes = bytes;
+        this.start = start;
+        this.end = end;
+        this.parsed = (bytes == null);
+    }
+
+    protected final void ensureParsed()
+    {
+        if (parsed) {
+            return;
+        }
+        parsed = true;
+        try {
+            JsonParser parser = serde.createJsonParser(bytes, start, end - start);
+            parser.nextToken();
+            parse(parser);
+        }
+        catch (IOException e) {
+            clear();
+            handleError(new SerDeException("error parsing JSON", e));
+        }
+        catch (SerDeException e) {
+            clear();
+            handleError(e);
+        }
+    }
+
+    /**
+     * Parse the children of the container. The parser is positioned on
+     * the start token of the container.
+     */
+    protected abstract void parse(JsonParser parser)
+            throws IOException, SerDeException;
+
+    /**
+     * Discard any partially parsed children after an error.
+     */
+    protected abstract void clear();
+
+    /**
+     * Decode a value that was deferred during parsing.
+     */
+    protected final Object parseValueAt(int offset, JsonDecoder decoder)
+    {
+        Object value = decoder.decodeDeferred(bytes, offset, end);
+        if (value != null) {
+            return value;
+        }
+        try {
+            JsonParser parser = serde.createJsonParser(bytes, offset, end - offset);
+            parser.nextToken();
+            return getValue(parser, decoder);
+        }
+        catch (IOException e) {
+            handleError(new SerDeException("error parsing JSON", e));
+        }
+        catch (SerDeException e) {
+            handleError(e);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value for the current token. Containers are returned as
+     * unparsed lazy objects and the parser is advanced past them.
+     */
+    protected final Object getValue(JsonParser parser, JsonDecoder decoder)
+            throws IOException, SerDeException
+    {
+        return decoder.decodeLazy(parser, serde, bytes, end);
+    }
+
+    /**
+     * Returns the offset in the input bytes of the first byte of the current
+     * token. This is only valid for objects, arrays and strings: the byte
+     * array parser reports the last byte it consumed as the current location,
+     * and it does not consume past their opening character until the value
+     * is read.
+     */
+    static int getTokenOffset(JsonParser parser)
+    {
+        return (int) parser.getCurrentLocation().getCharOffset();
+    }
+
+    /**
+     * Returns true if the token offsets of the parser are positions in its
+     * input bytes. This is only the case for UTF-8 JSON text: a Smile parser,
+     * or a parser for JSON text in another encoding, reports other offsets.
+     */
+    static boolean hasByteOffsets(JsonParser parser)
+    {
+        return parser instanceof Utf8StreamParser;
+    }
+
+    private void handleError(SerDeException e)
+    {
+        if (!serde.isIgnoreErrors()) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+import org.apache.hadoop.hive.serde2.typeinfo.ListTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.MapTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorFactory.getPrimitiveJavaObjectInspector;
+
+public final class LazyJsonObjectInspectorFactory
+{
+    private static final LazyJsonStringObjectInspector STRING_INSPECTOR = new LazyJsonStringObjectInspector();
+
+    private LazyJsonObjectInspectorFactory()
+    {
+    }
+
+    public static ObjectInspector getLazyObjectInspector(TypeInfo typeInfo)
+    {
+        return getLazyObjectInspector(typeInfo, false);
+    }
+
+    /**
+     * Returns the inspector for lazily parsed values of the type.
+     *
+     * @param lazyStrings if string values, other than map keys, are lazy
+     * references to the input bytes
+     */
+    public static ObjectInspector getLazyObjectInspector(TypeInfo typeInfo, boolean lazyStrings)
+    {
+        switch (typeInfo.getCategory()) {
+            case PRIMITIVE:
+                PrimitiveCategory primitiveCategory = ((PrimitiveTypeInfo) typeInfo).getPrimitiveCategory();
+                if (lazyStrings && (primitiveCategory == PrimitiveCategory.STRING)) {
+                    return STRING_INSPECTOR;
+                }
+                return getPrimitiveJavaObjectInspector(primitiveCategory);
+            case LIST:
+                ListTypeInfo listTypeInfo = (ListTypeInfo) typeInfo;
+                return new LazyJsonListObjectInspector(getLazyObjectInspector(listTypeInfo.getListElementTypeInfo(), lazyStrings));
+            case MAP:
+                MapTypeInfo mapTypeInfo = (MapTypeInfo) typeInfo;
+                return new LazyJsonMapObjectInspector(
+                        getLazyObjectInspector(mapTypeInfo.getMapKeyTypeInfo(), false),
+                        getLazyObjectInspector(mapTypeInfo.getMapValueTypeInfo(), lazyStrings));
+            case STRUCT:
+                StructTypeInfo structTypeInfo = (StructTypeInfo) typeInfo;
+                List<ObjectInspector> fieldInspectors = new ArrayList<ObjectInspector>();
+                for (TypeInfo fieldTypeInfo : structTypeInfo.getAllStructFieldTypeInfos()) {
+                    fieldInspectors.add(getLazyObjectInspector(fieldTypeInfo, lazyStrings));
+                }
+                return new LazyJsonStructObjectInspector(structTypeInfo.getAllStructFieldNames(), fieldInspectors);
+            default:
+                throw new IllegalArgumentException("unsupported type category: " + typeInfo.getCategory());
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.io.Text;
+
+import java.nio.charset.Charset;
+
+/**
+ * A string value that references its UTF-8 bytes in the input record.
+ * The bytes are only decoded to a Java string when one is requested.
+ * Strings that contain escapes are decoded by the parser instead.
+ */
+class LazyJsonString
+{
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final byte[] bytes;
+    private final int start;
+    private final int length;
+    private String value;
+    private Text text;
+
+    LazyJsonString(byte[] bytes, int start, int length)
+    {
+        this.bytes = bytes;
+        this.start = start;
+        this.length = length;
+    }
+
+    LazyJsonString(String value)
+    {
+        this(null, 0, 0);
+        this.value = value;
+    }
+
+    public String getString()
+    {
+        if (value == null) {
+            value = new String(bytes, start, length, UTF_8);
+        }
+        return value;
+    }
+
+    public Text getText()
+    {
+        if (text == null) {
+            text = new Text();
+            if (bytes != null) {
+                text.set(bytes, start, length);
+            }
+            else {
+                text.set(value);
+            }
+        }
+        return text;
+    }
+
+    @Override
+    public String toString()
+    {
+        return getString();
+    }
+}
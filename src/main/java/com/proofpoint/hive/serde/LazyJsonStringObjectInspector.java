@@ -0,0 +1,65 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.AbstractPrimitiveObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.PrimitiveObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.primitive.StringObjectInspector;
+import org.apache.hadoop.io.Text;
+
+public class LazyJsonStringObjectInspector
+        extends AbstractPrimitiveObjectInspector
+        implements StringObjectInspector
+{
+    LazyJsonStringObjectInspector()
+    {
+        super(PrimitiveObjectInspectorUtils.stringTypeEntry);
+    }
+
+    @Override
+    public Text getPrimitiveWritableObject(Object data)
+    {
+        if (data == null) {
+            return null;
+        }
+        return ((LazyJsonString) data).getText();
+    }
+
+    @Override
+    public String getPrimitiveJavaObject(Object data)
+    {
+        if (data == null) {
+            return null;
+        }
+        return ((LazyJsonString) data).getString();
+    }
+
+    @Override
+    public Object copyObject(Object data)
+    {
+        if (data == null) {
+            return null;
+        }
+        // the copy must not reference the input bytes
+        return new LazyJsonString(((LazyJsonString) data).getString());
+    }
+
+    @Override
+    public boolean preferWritable()
+    {
+        return true;
+    }
+}
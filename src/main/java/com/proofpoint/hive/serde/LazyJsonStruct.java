@@ -0,0 +1,112 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class LazyJsonStruct
+        extends LazyJsonObject
+{
+    private final StructDecoder decoder;
+    private final Object[] values;
+    private int[] offsets;
+
+    LazyJsonStruct(JsonSerde serde, byte[] bytes, int start, int end, StructDecoder decoder)
+    {
+        super(serde, bytes, start, end);
+        this.decoder = decoder;
+        this.values = new Object[decoder.getFieldCount()];
+    }
+
+    /**
+     * Create a struct without any fields set.
+     */
+    LazyJsonStruct(JsonSerde serde, StructDecoder decoder)
+    {
+        this(serde, null, 0, 0, decoder);
+    }
+
+    public Object getField(int index)
+    {
+        ensureParsed();
+        if ((offsets != null) && (offsets[index] >= 0)) {
+            int offset = offsets[index];
+            offsets[index] = -1;
+            values[index] = parseValueAt(offset, decoder.getFieldDecoder(index));
+        }
+        return values[index];
+    }
+
+    public List<Object> getFieldsAsList()
+    {
+        List<Object> list = new ArrayList<Object>(values.length);
+        for (int i = 0; i < values.length; i++) {
+            list.add(getField(i));
+        }
+        return list;
+    }
+
+    @Override
+    protected void parse(JsonParser parser)
+            throws IOException, SerDeException
+    {
+        int position = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            int index = decoder.getFieldIndex(parser.getCurrentName(), position);
+            position++;
+            parser.nextToken();
+
+            JsonDecoder fieldDecoder = (index < 0) ? null : decoder.getFieldDecoder(index);
+            if (fieldDecoder == null) {
+                parser.skipChildren();
+            }
+            else if (fieldDecoder.isDeferrable(parser.getCurrentToken())) {
+                setOffset(index, getTokenOffset(parser));
+                values[index] = null;
+            }
+            else {
+                setOffset(index, -1);
+                values[index] = getValue(parser, fieldDecoder);
+            }
+        }
+    }
+
+    private void setOffset(int index, int offset)
+    {
+        if (offsets == null) {
+            if (offset < 0) {
+                return;
+            }
+            offsets = new int[values.length];
+            Arrays.fill(offsets, -1);
+        }
+        offsets[index] = offset;
+    }
+
+    @Override
+    protected void clear()
+    {
+        Arrays.fill(values, null);
+        offsets = null;
+    }
+}
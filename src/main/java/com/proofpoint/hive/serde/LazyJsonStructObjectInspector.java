@@ -0,0 +1,118 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils;
+import org.apache.hadoop.hive.serde2.objectinspector.StructField;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class LazyJsonStructObjectInspector
+        extends StructObjectInspector
+{
+    private final List<Field> fields;
+
+    LazyJsonStructObjectInspector(List<String> fieldNames, List<ObjectInspector> fieldInspectors)
+    {
+        fields = new ArrayList<Field>(fieldNames.size());
+        for (int i = 0; i < fieldNames.size(); i++) {
+            fields.add(new Field(i, fieldNames.get(i), fieldInspectors.get(i)));
+        }
+    }
+
+    @Override
+    public String getTypeName()
+    {
+        return ObjectInspectorUtils.getStandardStructTypeName(this);
+    }
+
+    @Override
+    public Category getCategory()
+    {
+        return Category.STRUCT;
+    }
+
+    @Override
+    public List<? extends StructField> getAllStructFieldRefs()
+    {
+        return fields;
+    }
+
+    @Override
+    public StructField getStructFieldRef(String fieldName)
+    {
+        return ObjectInspectorUtils.getStandardStructFieldRef(fieldName, fields);
+    }
+
+    @Override
+    public Object getStructFieldData(Object data, StructField fieldRef)
+    {
+        if (data == null) {
+            return null;
+        }
+        return ((LazyJsonStruct) data).getField(((Field) fieldRef).index);
+    }
+
+    @Override
+    public List<Object> getStructFieldsDataAsList(Object data)
+    {
+        if (data == null) {
+            return null;
+        }
+        return ((LazyJsonStruct) data).getFieldsAsList();
+    }
+
+    private static class Field
+            implements StructField
+    {
+        private final int index;
+        private final String name;
+        private final ObjectInspector objectInspector;
+
+        private Field(int index, String name, ObjectInspector objectInspector)
+        {
+            this.index = index;
+            this.name = name.toLowerCase();
+            this.objectInspector = objectInspector;
+        }
+
+        @Override
+        public String getFieldName()
+        {
+            return name;
+        }
+
+        @Override
+        public ObjectInspector getFieldObjectInspector()
+        {
+            return objectInspector;
+        }
+
+        public String getFieldComment()
+        {
+            return null;
+        }
+
+        @Override
+        public String toString()
+        {
+            return index + ":" + name;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.typeinfo.ListTypeInfo;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.lang.String.format;
+
+class ListDecoder
+        extends JsonDecoder
+{
+    private final JsonDecoder elementDecoder;
+    private final RecordLimits limits;
+
+    ListDecoder(String columnName, ListTypeInfo typeInfo, DecoderSettings settings)
+    {
+        super(columnName);
+        elementDecoder = create(columnName, typeInfo.getListElementTypeInfo(), settings);
+        limits = settings.getLimits();
+    }
+
+    public JsonDecoder getElementDecoder()
+    {
+        return elementDecoder;
+    }
+
+    @Override
+    public void addPredictionCounts(long[] counts)
+    {
+        elementDecoder.addPredictionCounts(counts);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Object decodeValue(JsonParser parser, Object reuse)
+            throws IOException, SerDeException
+    {
+        checkStart(parser);
+        if (limits != null) {
+            limits.enterContainer();
+        }
+        if (reuse == null) {
+            List<Object> list = new ArrayList<Object>();
+            while (parser.nextToken() != JsonToken.END_ARRAY) {
+                if (limits != null) {
+                    limits.checkArrayLength(list.size() + 1);
+                }
+                list.add(elementDecoder.decode(parser));
+            }
+            if (limits != null) {
+                limits.exitContainer();
+            }
+            return list;
+        }
+
+        List<Object> list = (List<Object>) reuse;
+        int previousSize = list.size();
+        int size = 0;
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (limits != null) {
+                limits.checkArrayLength(size + 1);
+            }
+            if (size < previousSize) {
+                list.set(size, elementDecoder.decode(parser, list.get(size)));
+            }
+            else {
+                list.add(elementDecoder.decode(parser));
+            }
+            size++;
+        }
+        if (size < previousSize) {
+            list.subList(size, previousSize).clear();
+        }
+        if (limits != null) {
+            limits.exitContainer();
+        }
+        return list;
+    }
+
+    @Override
+    public Object decodeLazy(JsonParser parser, JsonSerde serde, byte[] bytes, int end)
+            throws IOException, SerDeException
+    {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        checkStart(parser);
+        Object list = new LazyJsonList(serde, bytes, LazyJsonObject.getTokenOffset(parser), end, this);
+        parser.skipChildren();
+        return list;
+    }
+
+    private void checkStart(JsonParser parser)
+            throws IOException, SerDeException
+    {
+        if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+            throw new ColumnTypeException(columnName, format("expected list, found %s for column %s", getNodeTypeName(parser), columnName));
+        }
+    }
+}
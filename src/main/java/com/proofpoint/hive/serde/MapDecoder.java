@@ -0,0 +1,136 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.typeinfo.MapTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.IOException;
+
+import static java.lang.String.format;
+import static org.apache.hadoop.hive.serde2.objectinspector.ObjectInspector.Category;
+import static org.apache.hadoop.hive.serde2.objectinspector.PrimitiveObjectInspector.PrimitiveCategory;
+
+class MapDecoder
+        extends JsonDecoder
+{
+    private final JsonDecoder valueDecoder;
+    private final String keyTypeError;
+    private final StringInternCache keyCache;
+    private final RecordLimits limits;
+
+    MapDecoder(String columnName, MapTypeInfo typeInfo, DecoderSettings settings)
+    {
+        super(columnName);
+        valueDecoder = create(columnName, typeInfo.getMapValueTypeInfo(), settings);
+        keyCache = settings.getKeyInternCache(columnName);
+        keyTypeError = getKeyTypeError(columnName, typeInfo);
+        limits = settings.getLimits();
+    }
+
+    @Override
+    public void addPredictionCounts(long[] counts)
+    {
+        valueDecoder.addPredictionCounts(counts);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Object decodeValue(JsonParser parser, Object reuse)
+            throws IOException, SerDeException
+    {
+        checkStart(parser);
+        CaseInsensitiveMap<Object> map;
+        if (reuse == null) {
+            map = new CaseInsensitiveMap<Object>();
+        }
+        else {
+            map = (CaseInsensitiveMap<Object>) reuse;
+            map.clear();
+        }
+        decodeEntries(parser, map, null);
+        return map;
+    }
+
+    @Override
+    public Object decodeLazy(JsonParser parser, JsonSerde serde, byte[] bytes, int end)
+            throws IOException, SerDeException
+    {
+        if (parser.getCurrentToken() == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        checkStart(parser);
+        Object map = new LazyJsonMap(serde, bytes, LazyJsonObject.getTokenOffset(parser), end, this);
+        parser.skipChildren();
+        return map;
+    }
+
+    /**
+     * Decode the entries of the object at the current token. Nested values
+     * are lazy if the map belongs to a lazily parsed row.
+     */
+    void decodeEntries(JsonParser parser, CaseInsensitiveMap<Object> map, LazyJsonObject lazyMap)
+            throws IOException, SerDeException
+    {
+        if (limits != null) {
+            limits.enterContainer();
+        }
+        int entries = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.getCurrentName();
+            entries++;
+            if (limits != null) {
+                limits.checkObjectFields(entries);
+            }
+            parser.nextToken();
+
+            Object object = (lazyMap == null) ? valueDecoder.decode(parser) : lazyMap.getValue(parser, valueDecoder);
+            String lowerCaseKey = (keyCache == null) ? null : keyCache.internLowerCase(key);
+            if (!map.putUnlessCaseConflict(key, lowerCaseKey, object)) {
+                throw new SerDeException(format("column %s case-insensitive map already contains key: %s", columnName, key));
+            }
+        }
+        if (limits != null) {
+            limits.exitContainer();
+        }
+    }
+
+    private void checkStart(JsonParser parser)
+            throws IOException, SerDeException
+    {
+        if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+            throw new ColumnTypeException(columnName, format("expected map, found %s for column %s", getNodeTypeName(parser), columnName));
+        }
+        if (keyTypeError != null) {
+            throw new SerDeException(keyTypeError);
+        }
+    }
+
+    private static String getKeyTypeError(String columnName, MapTypeInfo typeInfo)
+    {
+        if (typeInfo.getMapKeyTypeInfo().getCategory() != Category.PRIMITIVE) {
+            return "map key is not a primitive: " + typeInfo.getMapKeyTypeInfo();
+        }
+        PrimitiveTypeInfo keyType = (PrimitiveTypeInfo) typeInfo.getMapKeyTypeInfo();
+        if (keyType.getPrimitiveCategory() != PrimitiveCategory.STRING) {
+            return format("expected STRING map key, found %s for column %s", keyType.getPrimitiveCategory(), columnName);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+
+import java.io.IOException;
+
+/**
+ * Publishes the serde metrics as task counters while the records are read.
+ * The serde does not have a reporter, so the record reader of the input
+ * format publishes the totals for the JVM periodically and when closed.
+ */
+class MetricsRecordReader<K, V>
+        implements RecordReader<K, V>
+{
+    private static final int PUBLISH_INTERVAL = 10000;
+
+    private final RecordReader<K, V> delegate;
+    private final Reporter reporter;
+    private int recordsUntilPublish = PUBLISH_INTERVAL;
+
+    MetricsRecordReader(RecordReader<K, V> delegate, Reporter reporter)
+    {
+        this.delegate = delegate;
+        this.reporter = reporter;
+    }
+
+    @Override
+    public boolean next(K key, V value)
+            throws IOException
+    {
+        // the previous record has been deserialized when the next is read
+        recordsUntilPublish--;
+        if (recordsUntilPublish == 0) {
+            recordsUntilPublish = PUBLISH_INTERVAL;
+            JsonSerdeMetrics.getInstance().publishCounters(reporter);
+        }
+        return delegate.next(key, value);
+    }
+
+    @Override
+    public K createKey()
+    {
+        return delegate.createKey();
+    }
+
+    @Override
+    public V createValue()
+    {
+        return delegate.createValue();
+    }
+
+    @Override
+    public long getPos()
+            throws IOException
+    {
+        return delegate.getPos();
+    }
+
+    @Override
+    public float getProgress()
+            throws IOException
+    {
+        return delegate.getProgress();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        try {
+            delegate.close();
+        }
+        finally {
+            JsonSerdeMetrics.getInstance().publishCounters(reporter);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.LineRecordReader;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.apache.hadoop.mapred.TextInputFormat;
+
+import java.io.IOException;
+
+/**
+ * A text input format that parses and decodes the JSON lines in a pool of
+ * threads, for tables that use {@link JsonSerde} or {@link JsonEventSerde}.
+ * Once the serde has handed over its settings, the threads decode complete
+ * rows with copies of the serde; until then they only parse JSON trees. The
+ * number of threads is set by {@code json.parse.threads}, which defaults
+ * to the number of processors, and the number of lines read ahead of the
+ * query by {@code json.parse.queue.depth} and {@code json.parse.queue.bytes},
+ * which counts the estimated size of the parsed trees or rows as well as the
+ * lines. Lines longer than {@code json.parse.max.bytes}, which defaults to
+ * {@code limit.record.bytes}, or that exceed the {@code limit.depth},
+ * {@code limit.array.length} or {@code limit.object.fields} properties of
+ * the job, are not parsed into trees, and the serde record limits apply to
+ * them.
+ */
+public class ParallelJsonInputFormat
+        extends TextInputFormat
+{
+    public static final String THREADS_CONF = "json.parse.threads";
+    public static final String QUEUE_DEPTH_CONF = "json.parse.queue.depth";
+    public static final String QUEUE_BYTES_CONF = "json.parse.queue.bytes";
+    public static final String MAX_BYTES_CONF = "json.parse.max.bytes";
+    private static final int QUEUE_DEPTH_PER_THREAD = 64;
+    private static final long DEFAULT_QUEUE_BYTES = 64L * 1024 * 1024;
+
+    @Override
+    public RecordReader<LongWritable, Text> getRecordReader(InputSplit split, JobConf job, Reporter reporter)
+            throws IOException
+    {
+        reporter.setStatus(split.toString());
+        int threads = job.getInt(THREADS_CONF, Runtime.getRuntime().availableProcessors());
+        int queueDepth = job.getInt(QUEUE_DEPTH_CONF, threads * QUEUE_DEPTH_PER_THREAD);
+        long queueBytes = job.getLong(QUEUE_BYTES_CONF, DEFAULT_QUEUE_BYTES);
+        RecordLimits limits = RecordLimits.create(job, MAX_BYTES_CONF);
+        RecordReader<LongWritable, Text> lineReader = new LineRecordReader(job, (FileSplit) split);
+        return new MetricsRecordReader<LongWritable, Text>(new ParallelJsonRecordReader(lineReader, threads, queueDepth, queueBytes, limits), reporter);
+    }
+}
@@ -0,0 +1,356 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.RecordReader;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads lines with another record reader on the calling thread and parses
+ * them into JSON trees in a pool of worker threads. Once the serde reading
+ * the values has requested it, the workers instead decode complete rows with
+ * copies of the serde, so that the projection, streaming and conversion work
+ * is also done in parallel. At most a fixed number
+ * of lines are read ahead of the consumer, and the size of the queued lines
+ * and of their trees or rows, as estimated by {@link #estimateTreeBytes}
+ * and {@link #estimateRowBytes}, is also bounded. Records are returned in the order of the input. Lines
+ * that exceed the record limits and Smile records are passed through
+ * unparsed, so that the serde can reject or decode them itself. Any error
+ * in a worker, including a {@link StackOverflowError} for deeply nested
+ * JSON, is returned as the parse error of the line.
+ */
+public class ParallelJsonRecordReader
+        implements RecordReader<LongWritable, Text>
+{
+    private static final int NODE_BYTES = 24;
+    private static final int CONTAINER_BYTES = 64;
+    private static final int ENTRY_BYTES = 48;
+    private static final int STRING_BYTES = 56;
+
+    private final RecordReader<LongWritable, Text> lineReader;
+    private final ExecutorService executor;
+    private final int queueDepth;
+    private final long queueBytes;
+    private final RecordLimits limits;
+    // the futures return the number of bytes that their line added to the queue
+    private final Deque<Future<Long>> pending = new ArrayDeque<Future<Long>>();
+    private final Deque<ParsedJsonText> pendingLines = new ArrayDeque<ParsedJsonText>();
+    private final Deque<Long> pendingKeys = new ArrayDeque<Long>();
+    private final JsonFactory jsonFactory = new ObjectMapper().getJsonFactory();
+    // updated by the workers as the trees are built
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private WorkerDecoding workerDecoding;
+    private boolean inputDone;
+
+    public ParallelJsonRecordReader(RecordReader<LongWritable, Text> lineReader, int threads, int queueDepth)
+    {
+        this(lineReader, threads, queueDepth, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * @param queueBytes the estimated number of bytes of lines and trees to
+     * read ahead, which is exceeded only to read a single line
+     * @param limits the limits of the lines to parse, or null to parse all
+     * lines
+     */
+    ParallelJsonRecordReader(RecordReader<LongWritable, Text> lineReader, int threads, int queueDepth, long queueBytes, RecordLimits limits)
+    {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        if (queueDepth <= 0) {
+            throw new IllegalArgumentException("queue depth must be positive");
+        }
+        if (queueBytes <= 0) {
+            throw new IllegalArgumentException("queue bytes must be positive");
+        }
+        this.lineReader = lineReader;
+        this.queueDepth = queueDepth;
+        this.queueBytes = queueBytes;
+        this.limits = limits;
+        executor = Executors.newFixedThreadPool(threads, new DaemonThreadFactory());
+    }
+
+    @Override
+    public boolean next(LongWritable key, Text value)
+            throws IOException
+    {
+        if (value instanceof ParsedJsonText) {
+            WorkerDecoding requested = ((ParsedJsonText) value).getWorkerDecoding();
+            if (requested != null) {
+                workerDecoding = requested;
+            }
+        }
+        fillQueue();
+        if (pending.isEmpty()) {
+            return false;
+        }
+
+        pendingBytes.addAndGet(-getResult(pending.removeFirst()));
+        ParsedJsonText record = pendingLines.removeFirst();
+        key.set(pendingKeys.removeFirst());
+        value.set(record.getBytes(), 0, record.getLength());
+        if (value instanceof ParsedJsonText) {
+            ((ParsedJsonText) value).setParsed(record.getTree(), record.getError());
+            ((ParsedJsonText) value).setDecoded(record.getDecodedBy(), record.getRow(), record.getRowError());
+        }
+        return true;
+    }
+
+    private void fillQueue()
+            throws IOException
+    {
+        while (!inputDone && (pending.size() < queueDepth) && (pendingBytes.get() < queueBytes)) {
+            LongWritable key = lineReader.createKey();
+            final ParsedJsonText line = new ParsedJsonText();
+            if (!lineReader.next(key, line)) {
+                inputDone = true;
+                return;
+            }
+            pendingKeys.addLast(key.get());
+            pendingLines.addLast(line);
+            pendingBytes.addAndGet(line.getLength());
+            final WorkerDecoding decoding = workerDecoding;
+            pending.addLast(executor.submit(new Callable<Long>()
+            {
+                @Override
+                public Long call()
+                {
+                    long decodedBytes = (decoding == null) ? parse(line) : decode(decoding, line);
+                    pendingBytes.addAndGet(decodedBytes);
+                    return line.getLength() + decodedBytes;
+                }
+            }));
+        }
+    }
+
+    /**
+     * Parse the line and return the estimated size of its tree.
+     */
+    private long parse(ParsedJsonText line)
+    {
+        if (JsonSerde.hasSmileHeader(line.getBytes(), line.getLength())) {
+            // the serde decodes Smile records itself
+            return 0;
+        }
+        try {
+            if ((limits != null) && !isWithinLimits(line)) {
+                return 0;
+            }
+            JsonNode tree = jsonFactory.createJsonParser(line.getBytes(), 0, line.getLength()).readValueAsTree();
+            long treeBytes = estimateTreeBytes(tree);
+            line.setParsed(tree, null);
+            return treeBytes;
+        }
+        catch (IOException e) {
+            line.setParsed(null, e);
+        }
+        catch (Throwable e) {
+            // report the line as invalid rather than failing the task
+            line.setParsed(null, new IOException(e.toString(), e));
+        }
+        return 0;
+    }
+
+    /**
+     * Decode the line into a row and return the estimated size of the row.
+     * The serde applies its own record limits.
+     */
+    private static long decode(WorkerDecoding decoding, ParsedJsonText line)
+    {
+        try {
+            decoding.decode(line);
+        }
+        catch (Throwable e) {
+            // report the line as invalid rather than failing the task
+            line.setDecoded(decoding, null, new SerDeException("error parsing JSON", new IOException(e.toString(), e)));
+        }
+        return estimateRowBytes(line.getRow());
+    }
+
+    /**
+     * Returns a rough estimate of the heap used by a tree, from the sizes
+     * of the node objects and of the map entries and strings they hold on a
+     * 64-bit JVM. A tree is typically several times larger than its text.
+     */
+    static long estimateTreeBytes(JsonNode node)
+    {
+        if (node.isTextual()) {
+            return NODE_BYTES + STRING_BYTES + (2L * node.getTextValue().length());
+        }
+        if (!node.isContainerNode()) {
+            return NODE_BYTES;
+        }
+        long size = CONTAINER_BYTES;
+        if (node.isObject()) {
+            for (Iterator<String> names = node.getFieldNames(); names.hasNext(); ) {
+                size += ENTRY_BYTES + STRING_BYTES + (2L * names.next().length());
+            }
+        }
+        else {
+            size += 8L * node.size();
+        }
+        for (JsonNode child : node) {
+            size += estimateTreeBytes(child);
+        }
+        return size;
+    }
+
+    /**
+     * Returns a rough estimate of the heap used by a decoded row, using the
+     * same sizes as {@link #estimateTreeBytes}.
+     */
+    static long estimateRowBytes(Object value)
+    {
+        if (value == null) {
+            return 0;
+        }
+        if (value instanceof String) {
+            return STRING_BYTES + (2L * ((String) value).length());
+        }
+        long size = CONTAINER_BYTES;
+        if (value instanceof Object[]) {
+            for (Object element : (Object[]) value) {
+                size += 8 + estimateRowBytes(element);
+            }
+        }
+        else if (value instanceof List) {
+            for (Object element : (List<?>) value) {
+                size += 8 + estimateRowBytes(element);
+            }
+        }
+        else if (value instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += ENTRY_BYTES + estimateRowBytes(entry.getKey()) + estimateRowBytes(entry.getValue());
+            }
+        }
+        else {
+            return NODE_BYTES;
+        }
+        return size;
+    }
+
+    /**
+     * Returns true if the line is within the limits. Invalid JSON is left
+     * for the parser to report.
+     */
+    private boolean isWithinLimits(ParsedJsonText line)
+    {
+        try {
+            limits.checkLength(line.getLength());
+            if (limits.hasStructureLimits()) {
+                limits.checkStructure(jsonFactory.createJsonParser(line.getBytes(), 0, line.getLength()));
+            }
+            return true;
+        }
+        catch (SerDeException e) {
+            return false;
+        }
+        catch (IOException e) {
+            return true;
+        }
+    }
+
+    private static long getResult(Future<Long> future)
+            throws IOException
+    {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for parser");
+        }
+        catch (ExecutionException e) {
+            throw new IOException("error parsing record", e.getCause());
+        }
+    }
+
+    @Override
+    public LongWritable createKey()
+    {
+        return new LongWritable();
+    }
+
+    @Override
+    public Text createValue()
+    {
+        return new ParsedJsonText();
+    }
+
+    /**
+     * Returns the position of the line reader, which includes the lines
+     * that have been read ahead.
+     */
+    @Override
+    public long getPos()
+            throws IOException
+    {
+        return lineReader.getPos();
+    }
+
+    @Override
+    public float getProgress()
+            throws IOException
+    {
+        return lineReader.getProgress();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        executor.shutdownNow();
+        pending.clear();
+        pendingLines.clear();
+        pendingKeys.clear();
+        lineReader.close();
+    }
+
+    private static class DaemonThreadFactory
+            implements ThreadFactory
+    {
+        private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+            Thread thread = new Thread(runnable, "json-parser-" + THREAD_COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.io.Text;
+import org.codehaus.jackson.JsonNode;
+
+import java.io.DataInput;
+import java.io.IOException;
+
+/**
+ * A line of text together with the JSON tree parsed from it, or the error
+ * from parsing it. {@link JsonSerde} uses the tree instead of parsing the
+ * line again. A serde may also ask for its rows to be decoded by the reader,
+ * in which case the line holds the decoded row or the error from decoding
+ * it. The tree and row are not written when the text is serialized.
+ */
+public class ParsedJsonText
+        extends Text
+{
+    private JsonNode tree;
+    private IOException error;
+    private WorkerDecoding workerDecoding;
+    private WorkerDecoding decodedBy;
+    private Object row;
+    private SerDeException rowError;
+
+    public JsonNode getTree()
+    {
+        return tree;
+    }
+
+    public IOException getError()
+    {
+        return error;
+    }
+
+    public void setParsed(JsonNode tree, IOException error)
+    {
+        this.tree = tree;
+        this.error = error;
+        decodedBy = null;
+        row = null;
+        rowError = null;
+    }
+
+    /**
+     * Returns the decoding requested by the serde reading this value, or
+     * null if it only uses the parsed tree. The request is kept when the
+     * text changes.
+     */
+    WorkerDecoding getWorkerDecoding()
+    {
+        return workerDecoding;
+    }
+
+    void setWorkerDecoding(WorkerDecoding workerDecoding)
+    {
+        this.workerDecoding = workerDecoding;
+    }
+
+    /**
+     * Returns the decoding that produced the row, or null if the line was
+     * not decoded.
+     */
+    WorkerDecoding getDecodedBy()
+    {
+        return decodedBy;
+    }
+
+    Object getRow()
+    {
+        return row;
+    }
+
+    SerDeException getRowError()
+    {
+        return rowError;
+    }
+
+    void setDecoded(WorkerDecoding decodedBy, Object row, SerDeException rowError)
+    {
+        this.decodedBy = decodedBy;
+        this.row = row;
+        this.rowError = rowError;
+    }
+
+    // changing the text discards the parsed tree
+
+    @Override
+    public void set(String string)
+    {
+        super.set(string);
+        setParsed(null, null);
+    }
+
+    @Override
+    public void set(byte[] utf8, int start, int len)
+    {
+        super.set(utf8, start, len);
+        setParsed(null, null);
+    }
+
+    @Override
+    public void clear()
+    {
+        super.clear();
+        setParsed(null, null);
+    }
+
+    @Override
+    public void readFields(DataInput in)
+            throws IOException
+    {
+        super.readFields(in);
+        setParsed(null, null);
+    }
+}
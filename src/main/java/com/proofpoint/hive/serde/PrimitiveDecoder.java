@@ -0,0 +1,573 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.io.ByteWritable;
+import org.apache.hadoop.hive.serde2.io.DoubleWritable;
+import org.apache.hadoop.hive.serde2.io.ShortWritable;
+import org.apache.hadoop.hive.serde2.typeinfo.PrimitiveTypeInfo;
+import org.apache.hadoop.io.BooleanWritable;
+import org.apache.hadoop.io.FloatWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.IOException;
+
+import static java.lang.String.format;
+
+/**
+ * Decoders for primitive columns. The conversions match the JsonNode
+ * accessors: values of the wrong JSON type become zero, false or null.
+ * In writable mode, the values are returned as Writable objects, and the
+ * previous value is updated in place when one is passed for reuse.
+ */
+abstract class PrimitiveDecoder
+        extends JsonDecoder
+{
+    protected final boolean writable;
+
+    protected PrimitiveDecoder(String columnName, boolean writable)
+    {
+        super(columnName);
+        this.writable = writable;
+    }
+
+    public static JsonDecoder create(String columnName, PrimitiveTypeInfo typeInfo, DecoderSettings settings)
+    {
+        boolean writable = settings.isWritable();
+        switch (typeInfo.getPrimitiveCategory()) {
+            case VOID:
+                return new UnsupportedPrimitiveDecoder(columnName, writable, "cannot deserialize to VOID type for column " + columnName);
+            case UNKNOWN:
+                return new UnsupportedPrimitiveDecoder(columnName, writable, "cannot deserialize to UNKNOWN type for column " + columnName);
+            case BOOLEAN:
+                return new BooleanDecoder(columnName, writable);
+            case BYTE:
+                return new ByteDecoder(columnName, writable);
+            case SHORT:
+                return new ShortDecoder(columnName, writable);
+            case INT:
+                return new IntDecoder(columnName, writable);
+            case LONG:
+                return new LongDecoder(columnName, writable);
+            case FLOAT:
+                return new FloatDecoder(columnName, writable);
+            case DOUBLE:
+                return new DoubleDecoder(columnName, writable);
+            case STRING:
+                StringInternCache internCache = writable ? null : settings.getInternCache(columnName);
+                return new StringDecoder(columnName, writable, settings.isLazyStrings(), internCache);
+            default:
+                return new UnsupportedPrimitiveDecoder(columnName, writable, "unhandled primitive type: " + typeInfo.getPrimitiveCategory());
+        }
+    }
+
+    @Override
+    protected final Object decodeValue(JsonParser parser, Object reuse)
+            throws IOException, SerDeException
+    {
+        JsonToken token = parser.getCurrentToken();
+        if (!token.isScalarValue()) {
+            throw new ColumnTypeException(columnName, format("expected primitive, found %s for column %s", getNodeTypeName(parser), columnName));
+        }
+        return decodePrimitive(parser, token, reuse);
+    }
+
+    protected abstract Object decodePrimitive(JsonParser parser, JsonToken token, Object reuse)
+            throws IOException, SerDeException;
+
+    @Override
+    protected final void decodeVectorValue(JsonParser parser, byte[] bytes, int end, ColumnVector vector, int row)
+            throws IOException, SerDeException
+    {
+        JsonToken token = parser.getCurrentToken();
+        if (!token.isScalarValue()) {
+            throw new ColumnTypeException(columnName, format("expected primitive, found %s for column %s", getNodeTypeName(parser), columnName));
+        }
+        decodePrimitiveVector(parser, token, bytes, end, vector, row);
+    }
+
+    /**
+     * Store the value at the current token in the column vector, using the
+     * same conversions as {@link #decodePrimitive}.
+     */
+    protected abstract void decodePrimitiveVector(JsonParser parser, JsonToken token, byte[] bytes, int end, ColumnVector vector, int row)
+            throws IOException, SerDeException;
+
+    @Override
+    public boolean isDeferrable(JsonToken token)
+    {
+        return token == JsonToken.VALUE_STRING;
+    }
+
+    protected static int getIntValue(JsonParser parser, JsonToken token)
+            throws IOException
+    {
+        return token.isNumeric() ? parser.getNumberValue().intValue() : 0;
+    }
+
+    protected static long getLongValue(JsonParser parser, JsonToken token)
+            throws IOException
+    {
+        return token.isNumeric() ? parser.getNumberValue().longValue() : 0L;
+    }
+
+    protected static double getDoubleValue(JsonParser parser, JsonToken token)
+            throws IOException
+    {
+        return token.isNumeric() ? parser.getNumberValue().doubleValue() : 0.0;
+    }
+
+    private static class BooleanDecoder
+            extends PrimitiveDecoder
+    {
+        private BooleanDecoder(String columnName, boolean writable)
+        {
+            super(columnName, writable);
+        }
+
+        @Override
+        protected Object decodePrimitive(JsonParser parser, JsonToken token, Object reuse)
+        {
+            boolean value = (token == JsonToken.VALUE_TRUE);
+            if (!writable) {
+                return value;
+            }
+            BooleanWritable result = (reuse == null) ? new BooleanWritable() : (BooleanWritable) reuse;
+            result.set(value);
+            return result;
+        }
+
+        @Override
+        protected void decodePrimitiveVector(JsonParser parser, JsonToken token, byte[] bytes, int end, ColumnVector vector, int row)
+        {
+            ((ColumnVector.LongColumnVector) vector).vector[row] = (token == JsonToken.VALUE_TRUE) ? 1 : 0;
+        }
+    }
+
+    private static class ByteDecoder
+            extends PrimitiveDecoder
+    {
+        private ByteDecoder(String columnName, boolean writable)
+        {
+            super(columnName, writable);
+        }
+
+        @Override
+        protected Object decodePrimitive(JsonParser parser, JsonToken token, Object reuse)
+                throws IOException
+        {
+            byte value = (byte) getIntValue(parser, token);
+            if (!writable) {
+                return value;
+            }
+            ByteWritable result = (reuse == null) ? new ByteWritable() : (ByteWritable) reuse;
+            result.set(value);
+            return result;
+        }
+
+        @Override
+        protected void decodePrimitiveVector(JsonParser parser, JsonToken token, byte[] bytes, int end, ColumnVector vector, int row)
+                throws IOException
+        {
+            ((ColumnVector.LongColumnVector) vector).vector[row] = (byte) getIntValue(parser, token);
+        }
+    }
+
+    private static class ShortDecoder
+            extends PrimitiveDecoder
+    {
+        private ShortDecoder(String columnName, boolean writable)
+        {
+            super(columnName, writable);
+        }
+
+        @Override
+        protected Object decodePrimitive(JsonParser parser, JsonToken token, Object reuse)
+                throws IOException
+        {
+            short value = (short) getIntValue(parser, token);
+            if (!writable) {
+                return value;
+            }
+            ShortWritable result = (reuse == null) ? new ShortWritable() : (ShortWritable) reuse;
+            result.set(value);
+            return result;
+        }
+
+        @Override
+        protected void decodePrimitiveVector(JsonParser parser, JsonToken token, byte[] bytes, int end, ColumnVector vector, int row)
+                throws IOException
+        {
+            ((ColumnVector.LongColumnVector) vector).vector[row] = (short) getIntValue(parser, token);
+        }
+    }
+
+    private static class IntDecoder
+            extends PrimitiveDecoder
+    {
+        private IntDecoder(String columnName, boolean writable)
+        {
+            super(columnName, writable);
+        }
+
+        @Override
+        protected Object decodePrimitive(JsonParser parser, JsonToken token, Object reuse)
+                throws IOException
+        {
+            int value = getIntValue(parser, token);
+            if (!writable) {
+                return value;
+            }
+            IntWritable result = (reuse == null) ? new IntWritable() : (IntWritable) reuse;
+            result.set(value);
+            return result;
+        }
+
+        @Override
+        protected void decodePrimitiveVector(JsonParser parser, JsonToken token, byte[] bytes, int end, ColumnVector vector, int row)
+                throws IOException
+        {
+            ((ColumnVector.LongColumnVector) vector).vector[row] = getIntValue(parser, token);
+        }
+    }
+
+    private static class LongDecoder
+            extends PrimitiveDecoder
+    {
+        private LongDecoder(String columnName, boolean writable)
+        {
+            super(columnName, writable);
+        }
+
+        @Override
+        protected Object decodePrimitive(JsonParser parser, JsonToken token, Object reuse)
+                throws IOException
+        {
+            long value = getLongValue(parser, token);
+            if (!writable) {
+                return value;
+            }
+            LongWritable result = (reuse == null) ? new LongWritable() : (LongWritable) reuse;
+            result.set(value);
+            return result;
+        }
+
+        @Override
+        protected void decodePrimitiveVector(JsonParser parser, JsonToken token, byte[] bytes, int end, ColumnVector vector, int row)
+                throws IOException
+        {
+            ((ColumnVector.LongColumnVector) vector).vector[row] = getLongValue(parser, token);
+        }
+    }
+
+    private static class FloatDecoder
+            extends PrimitiveDecoder
+    {
+        private FloatDecoder(String columnName, boolean writable)
+        {
+            super(columnName, writable);
+        }
+
+        @Override
+        protected Object decodePrimitive(JsonParser parser, JsonToken token, Object reuse)
+                throws IOException
+        {
+            float value = (float) getDoubleValue(parser, token);
+            if (!writable) {
+                return value;
+            }
+            FloatWritable result = (reuse == null) ? new FloatWritable() : (FloatWritable) reuse;
+            result.set(value);
+            return result;
+        }
+
+        @Override
+        protected void decodePrimitiveVector(JsonParser parser, JsonToken token, byte[] bytes, int end, ColumnVector vector, int row)
+                throws IOException
+        {
+            ((ColumnVector.DoubleColumnVector) vector).vector[row] = (float) getDoubleValue(parser, token);
+        }
+    }
+
+    private static class DoubleDecoder
+            extends PrimitiveDecoder
+    {
+        private DoubleDecoder(String columnName, boolean writable)
+        {
+            super(columnName, writable);
+        }
+
+        @Override
+        protected Object decodePrimitive(JsonParser parser, JsonToken token, Object reuse)
+                throws IOException
+        {
+            double value = getDoubleValue(parser, token);
+            if (!writable) {
+                return value;
+            }
+            DoubleWritable result = (reuse == null) ? new DoubleWritable() : (DoubleWritable) reuse;
+            result.set(value);
+            return result;
+        }
+
+        @Override
+        protected void decodePrimitiveVector(JsonParser parser, JsonToken token, byte[] bytes, int end, ColumnVector vector, int row)
+                throws IOException
+        {
+            ((ColumnVector.DoubleColumnVector) vector).vector[row] = getDoubleValue(parser, token);
+        }
+    }
+
+    private static class StringDecoder
+            extends PrimitiveDecoder
+    {
+        private final boolean lazyStrings;
+        private final StringInternCache internCache;
+
+        private StringDecoder(String columnName, boolean writable, boolean lazyStrings, StringInternCache internCache)
+        {
+            super(columnName, writable);
+            this.lazyStrings = lazyStrings;
+            this.internCache = internCache;
+        }
+
+        @Override
+        public Object decodeLazy(JsonParser parser, JsonSerde serde, byte[] bytes, int end)
+                throws IOException, SerDeException
+        {
+            if (!lazyStrings || (parser.getCurrentToken() != JsonToken.VALUE_STRING)) {
+                return super.decodeLazy(parser, serde, bytes, end);
+            }
+            if (LazyJsonObject.hasByteOffsets(parser)) {
+                int start = LazyJsonObject.getTokenOffset(parser) + 1;
+                int quote = findClosingQuote(bytes, start, end);
+                if (quote >= 0) {
+                    return new LazyJsonString(bytes, start, quote - start);
+                }
+            }
+            return new LazyJsonString(parser.getText());
+        }
+
+        /**
+         * Decode a deferred string from its bytes, which avoids creating a
+         * parser for each field that is accessed. Strings that are not valid
+         * JSON are left for the parser to report.
+         */
+        @Override
+        public Object decodeDeferred(byte[] bytes, int offset, int end)
+        {
+            if ((offset >= end) || (bytes[offset] != '"')) {
+                return null;
+            }
+            int start = offset + 1;
+            if (lazyStrings) {
+                int quote = findClosingQuote(bytes, start, end);
+                if (quote >= 0) {
+                    return new LazyJsonString(bytes, start, quote - start);
+                }
+            }
+            String value = decodeString(bytes, start, end);
+            if (value == null) {
+                return null;
+            }
+            if (lazyStrings) {
+                return new LazyJsonString(value);
+            }
+            if (internCache != null) {
+                return internCache.intern(value);
+            }
+            return writable ? new Text(value) : value;
+        }
+
+        /**
+         * Returns the string starting at the position, which follows its
+         * opening quote, with any escapes decoded, or null if the string is
+         * not valid JSON.
+         */
+        private static String decodeString(byte[] bytes, int start, int end)
+        {
+            StringBuilder builder = null;
+            int run = start;
+            int i = start;
+            while (i < end) {
+                int b = bytes[i] & 0xFF;
+                if (b == '"') {
+                    String tail = new String(bytes, run, i - run, LazyJsonString.UTF_8);
+                    return (builder == null) ? tail : builder.append(tail).toString();
+                }
+                if (b < 0x20) {
+                    return null;
+                }
+                if (b != '\\') {
+                    i++;
+                    continue;
+                }
+                if (i + 1 >= end) {
+                    return null;
+                }
+                if (builder == null) {
+                    builder = new StringBuilder((i - start) + 16);
+                }
+                builder.append(new String(bytes, run, i - run, LazyJsonString.UTF_8));
+                char c;
+                switch (bytes[i + 1]) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        c = (char) bytes[i + 1];
+                        break;
+                    case 'b':
+                        c = '\b';
+                        break;
+                    case 'f':
+                        c = '\f';
+                        break;
+                    case 'n':
+                        c = '\n';
+                        break;
+                    case 'r':
+                        c = '\r';
+                        break;
+                    case 't':
+                        c = '\t';
+                        break;
+                    case 'u':
+                        int code = (i + 6 <= end) ? parseHex(bytes, i + 2) : -1;
+                        if (code < 0) {
+                            return null;
+                        }
+                        c = (char) code;
+                        i += 4;
+                        break;
+                    default:
+                        return null;
+                }
+                builder.append(c);
+                i += 2;
+                run = i;
+            }
+            return null;
+        }
+
+        /**
+         * Returns the value of the four hex digits at the position, or -1 if
+         * they are not all hex digits.
+         */
+        private static int parseHex(byte[] bytes, int start)
+        {
+            int value = 0;
+            for (int i = start; i < start + 4; i++) {
+                int digit = Character.digit(bytes[i], 16);
+                if (digit < 0) {
+                    return -1;
+                }
+                value = (value << 4) | digit;
+            }
+            return value;
+        }
+
+        /**
+         * Returns the position of the quote that ends the string starting at
+         * the position, or -1 if the string has escapes and the bytes cannot
+         * be used as is.
+         */
+        private static int findClosingQuote(byte[] bytes, int start, int end)
+        {
+            if ((start <= 0) || (bytes[start - 1] != '"')) {
+                return -1;
+            }
+            for (int i = start; i < end; i++) {
+                if (bytes[i] == '"') {
+                    return i;
+                }
+                if (bytes[i] == '\\') {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        protected Object decodePrimitive(JsonParser parser, JsonToken token, Object reuse)
+                throws IOException
+        {
+            if (token != JsonToken.VALUE_STRING) {
+                return null;
+            }
+            if (internCache != null) {
+                return internCache.intern(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+            }
+            if (!writable) {
+                return parser.getText();
+            }
+            Text result = (reuse == null) ? new Text() : (Text) reuse;
+            result.set(parser.getText());
+            return result;
+        }
+
+        @Override
+        protected void decodePrimitiveVector(JsonParser parser, JsonToken token, byte[] bytes, int end, ColumnVector vector, int row)
+                throws IOException
+        {
+            ColumnVector.BytesColumnVector strings = (ColumnVector.BytesColumnVector) vector;
+            if (token != JsonToken.VALUE_STRING) {
+                strings.setNull(row);
+                return;
+            }
+            if (LazyJsonObject.hasByteOffsets(parser)) {
+                int start = LazyJsonObject.getTokenOffset(parser) + 1;
+                int quote = findClosingQuote(bytes, start, end);
+                if (quote >= 0) {
+                    strings.setRef(row, bytes, start, quote - start);
+                    return;
+                }
+            }
+            byte[] value = parser.getText().getBytes(LazyJsonString.UTF_8);
+            strings.setRef(row, value, 0, value.length);
+        }
+    }
+
+    private static class UnsupportedPrimitiveDecoder
+            extends PrimitiveDecoder
+    {
+        private final String message;
+
+        private UnsupportedPrimitiveDecoder(String columnName, boolean writable, String message)
+        {
+            super(columnName, writable);
+            this.message = message;
+        }
+
+        @Override
+        protected Object decodePrimitive(JsonParser parser, JsonToken token, Object reuse)
+                throws SerDeException
+        {
+            throw new SerDeException(message);
+        }
+
+        @Override
+        protected void decodePrimitiveVector(JsonParser parser, JsonToken token, byte[] bytes, int end, ColumnVector vector, int row)
+                throws SerDeException
+        {
+            throw new SerDeException(message);
+        }
+    }
+}
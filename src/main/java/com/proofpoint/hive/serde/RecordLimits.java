@@ -0,0 +1,212 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static java.lang.String.format;
+
+/**
+ * Rejects records that are too large to decode safely. The record size is
+ * checked before parsing. The structure is checked by the decoders as they
+ * read the tokens, so a rejected record is never fully built. Values that
+ * the decoders skip are not built either, so they are not counted. A limit
+ * of zero means no limit. Instances are not thread safe, except for
+ * {@link #checkStructure}.
+ */
+final class RecordLimits
+{
+    static final String RECORD_BYTES = "limit.record.bytes";
+    static final String DEPTH = "limit.depth";
+    static final String ARRAY_LENGTH = "limit.array.length";
+    static final String OBJECT_FIELDS = "limit.object.fields";
+
+    private final int maxRecordBytes;
+    private final int maxDepth;
+    private final int maxArrayLength;
+    private final int maxObjectFields;
+
+    // the number of containers that the decoders are inside
+    private int depth;
+
+    RecordLimits(int maxRecordBytes, int maxDepth, int maxArrayLength, int maxObjectFields)
+    {
+        this.maxRecordBytes = maxRecordBytes;
+        this.maxDepth = maxDepth;
+        this.maxArrayLength = maxArrayLength;
+        this.maxObjectFields = maxObjectFields;
+    }
+
+    /**
+     * Returns the limits in the limit.* serde properties, or null if there
+     * are no limits.
+     */
+    public static RecordLimits create(Properties table)
+            throws SerDeException
+    {
+        int maxRecordBytes = JsonSerde.getIntProperty(table, RECORD_BYTES, "record size limit");
+        int maxDepth = JsonSerde.getIntProperty(table, DEPTH, "nesting depth limit");
+        int maxArrayLength = JsonSerde.getIntProperty(table, ARRAY_LENGTH, "array length limit");
+        int maxObjectFields = JsonSerde.getIntProperty(table, OBJECT_FIELDS, "object size limit");
+        if ((maxRecordBytes == 0) && (maxDepth == 0) && (maxArrayLength == 0) && (maxObjectFields == 0)) {
+            return null;
+        }
+        return new RecordLimits(maxRecordBytes, maxDepth, maxArrayLength, maxObjectFields);
+    }
+
+    /**
+     * Returns the limits in the limit.* properties of the job, with the
+     * record size limit replaced by the property if it is set, or null if
+     * there are no limits.
+     */
+    public static RecordLimits create(Configuration configuration, String recordBytesProperty)
+    {
+        int maxRecordBytes = configuration.getInt(recordBytesProperty, configuration.getInt(RECORD_BYTES, 0));
+        int maxDepth = configuration.getInt(DEPTH, 0);
+        int maxArrayLength = configuration.getInt(ARRAY_LENGTH, 0);
+        int maxObjectFields = configuration.getInt(OBJECT_FIELDS, 0);
+        if ((maxRecordBytes <= 0) && (maxDepth <= 0) && (maxArrayLength <= 0) && (maxObjectFields <= 0)) {
+            return null;
+        }
+        return new RecordLimits(Math.max(maxRecordBytes, 0), Math.max(maxDepth, 0), Math.max(maxArrayLength, 0), Math.max(maxObjectFields, 0));
+    }
+
+    public void checkLength(int length)
+            throws SerDeException
+    {
+        if ((maxRecordBytes > 0) && (length > maxRecordBytes)) {
+            throw new SerDeException(format("record size %s exceeds limit %s", length, maxRecordBytes));
+        }
+    }
+
+    /**
+     * Returns true if the structure of the records is limited.
+     */
+    public boolean hasStructureLimits()
+    {
+        return (maxDepth > 0) || (maxArrayLength > 0) || (maxObjectFields > 0);
+    }
+
+    /**
+     * Called by the serde before a record is decoded.
+     */
+    public void startRecord()
+    {
+        depth = 0;
+    }
+
+    /**
+     * Called by a decoder when it starts to decode an array or object.
+     */
+    public void enterContainer()
+            throws SerDeException
+    {
+        depth++;
+        checkDepth(depth);
+    }
+
+    /**
+     * Called by a decoder when it has decoded an array or object.
+     */
+    public void exitContainer()
+    {
+        depth--;
+    }
+
+    /**
+     * Called by a decoder for each element of an array.
+     */
+    public void checkArrayLength(int length)
+            throws SerDeException
+    {
+        if ((maxArrayLength > 0) && (length > maxArrayLength)) {
+            throw new SerDeException(format("array length exceeds limit %s", maxArrayLength));
+        }
+    }
+
+    /**
+     * Called by a decoder for each field of an object.
+     */
+    public void checkObjectFields(int fields)
+            throws SerDeException
+    {
+        if ((maxObjectFields > 0) && (fields > maxObjectFields)) {
+            throw new SerDeException(format("object size exceeds limit %s", maxObjectFields));
+        }
+    }
+
+    private void checkDepth(int depth)
+            throws SerDeException
+    {
+        if ((maxDepth > 0) && (depth > maxDepth)) {
+            throw new SerDeException(format("nesting depth exceeds limit %s", maxDepth));
+        }
+    }
+
+    /**
+     * Scan the first value of the parser, for records that are parsed
+     * before they are decoded, such as by lazy parsing. Invalid JSON is reported by the parser, but a
+     * truncated value is accepted so that the error comes from decoding the
+     * record. This method does not change the state of the limits, so it
+     * may be called by several threads.
+     */
+    public void checkStructure(JsonParser parser)
+            throws IOException, SerDeException
+    {
+        // element count and kind of each open container
+        int[] counts = new int[16];
+        boolean[] arrays = new boolean[16];
+        int depth = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != null) {
+            if ((depth > 0) && arrays[depth] && (token != JsonToken.END_ARRAY)) {
+                counts[depth]++;
+                checkArrayLength(counts[depth]);
+            }
+            switch (token) {
+                case START_ARRAY:
+                case START_OBJECT:
+                    depth++;
+                    checkDepth(depth);
+                    if (depth == counts.length) {
+                        counts = Arrays.copyOf(counts, depth * 2);
+                        arrays = Arrays.copyOf(arrays, depth * 2);
+                    }
+                    counts[depth] = 0;
+                    arrays[depth] = (token == JsonToken.START_ARRAY);
+                    break;
+                case FIELD_NAME:
+                    counts[depth]++;
+                    checkObjectFields(counts[depth]);
+                    break;
+                case END_ARRAY:
+                case END_OBJECT:
+                    depth--;
+                    break;
+            }
+            if (depth == 0) {
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+
+import java.util.List;
+
+/**
+ * A batch of rows stored as one {@link ColumnVector} per column, filled by
+ * {@link JsonSerde#deserializeBatch}. Columns that are not projected have
+ * no vector.
+ */
+public class RowBatch
+{
+    private final ColumnVector[] columns;
+    private final int capacity;
+    private int size;
+
+    /**
+     * @param projected the columns to create vectors for, or null for all
+     */
+    RowBatch(StructTypeInfo typeInfo, boolean[] projected, int capacity)
+    {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        List<TypeInfo> types = typeInfo.getAllStructFieldTypeInfos();
+        columns = new ColumnVector[types.size()];
+        for (int i = 0; i < columns.length; i++) {
+            if ((projected == null) || projected[i]) {
+                columns[i] = ColumnVector.create(types.get(i), capacity);
+            }
+        }
+        this.capacity = capacity;
+    }
+
+    public int getCapacity()
+    {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of rows in the batch.
+     */
+    public int getSize()
+    {
+        return size;
+    }
+
+    public int getColumnCount()
+    {
+        return columns.length;
+    }
+
+    /**
+     * Returns the vector for the column, or null if the column is not
+     * projected.
+     */
+    public ColumnVector getColumn(int index)
+    {
+        return columns[index];
+    }
+
+    ColumnVector[] getColumns()
+    {
+        return columns;
+    }
+
+    void reset(int size)
+    {
+        for (ColumnVector column : columns) {
+            if (column != null) {
+                column.reset();
+            }
+        }
+        this.size = size;
+    }
+
+    void setNullRow(int row)
+    {
+        for (ColumnVector column : columns) {
+            if (column != null) {
+                column.setNull(row);
+            }
+        }
+    }
+}
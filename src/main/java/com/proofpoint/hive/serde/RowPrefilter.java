@@ -0,0 +1,160 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Rejects rows whose top-level string column certainly does not equal one
+ * of a set of values, without decoding the row. The fields of the record
+ * are scanned and nested values are skipped. Whenever the outcome is not
+ * certain, such as for invalid JSON, a nested or non-string value or a
+ * repeated field, the row is accepted so that it is fully parsed. Instances are not
+ * thread safe.
+ */
+class RowPrefilter
+{
+    // the text of a pushed filter such as: (eventtype = 'click')
+    private static final Pattern FILTER_TEXT = Pattern.compile("\\(?\\s*(\\w+)\\s*=\\s*'([^'\\\\]*)'\\s*\\)?");
+
+    private final String columnName;
+    private final char[][] values;
+    private long rejectedRows;
+
+    RowPrefilter(String columnName, Collection<String> values)
+    {
+        this.columnName = ColumnNameMap.toLowerCase(columnName);
+        this.values = new char[values.size()][];
+        int i = 0;
+        for (String value : values) {
+            this.values[i] = value.toCharArray();
+            i++;
+        }
+    }
+
+    /**
+     * Creates a prefilter from the text of a filter that Hive pushed down,
+     * or returns null if the filter is not a simple equality comparison of
+     * a column with a string literal.
+     */
+    public static RowPrefilter fromFilterText(String filterText)
+    {
+        if (filterText == null) {
+            return null;
+        }
+        Matcher matcher = FILTER_TEXT.matcher(filterText.trim());
+        if (!matcher.matches()) {
+            return null;
+        }
+        return new RowPrefilter(matcher.group(1), Collections.singletonList(matcher.group(2)));
+    }
+
+    public String getColumnName()
+    {
+        return columnName;
+    }
+
+    public long getRejectedRows()
+    {
+        return rejectedRows;
+    }
+
+    /**
+     * Returns false if the row certainly does not match. The parser must
+     * not have been advanced.
+     */
+    public boolean mightMatch(JsonParser parser)
+    {
+        boolean matches;
+        try {
+            matches = scan(parser);
+        }
+        catch (IOException e) {
+            // let the full parse report the error
+            return true;
+        }
+        if (!matches) {
+            rejectedRows++;
+        }
+        return matches;
+    }
+
+    private boolean scan(JsonParser parser)
+            throws IOException
+    {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return true;
+        }
+        boolean found = false;
+        boolean matches = false;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            boolean column = ColumnNameMap.equalsLowerCase(columnName, parser.getCurrentName());
+            JsonToken token = parser.nextToken();
+            if (!column) {
+                parser.skipChildren();
+                continue;
+            }
+            if (found || !token.isScalarValue()) {
+                return true;
+            }
+            found = true;
+            if (token == JsonToken.VALUE_NULL) {
+                continue;
+            }
+            if (token != JsonToken.VALUE_STRING) {
+                // the full parse decides how other scalars are converted
+                return true;
+            }
+            matches = containsValue(parser);
+        }
+        if (parser.getCurrentToken() != JsonToken.END_OBJECT) {
+            return true;
+        }
+        // a missing or null field never matches
+        return matches;
+    }
+
+    private boolean containsValue(JsonParser parser)
+            throws IOException
+    {
+        char[] chars = parser.getTextCharacters();
+        int offset = parser.getTextOffset();
+        int length = parser.getTextLength();
+        for (char[] value : values) {
+            if (value.length == length && regionMatches(value, chars, offset)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean regionMatches(char[] value, char[] chars, int offset)
+    {
+        for (int i = 0; i < value.length; i++) {
+            if (value[i] != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
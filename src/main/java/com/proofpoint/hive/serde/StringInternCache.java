@@ -0,0 +1,120 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+/**
+ * A bounded cache of canonical strings for a column with few distinct
+ * values. Values are looked up from the parser characters, so a repeated
+ * value does not create a new string. The cache is direct mapped: a new
+ * value replaces whatever value had the same slot, which keeps eviction
+ * free. Instances are not thread safe.
+ */
+class StringInternCache
+{
+    private static final int SIZE = 1024;
+    private static final int MAX_LENGTH = 128;
+
+    private final String[] entries = new String[SIZE];
+    private long hits;
+    private long misses;
+
+    /**
+     * Returns the canonical string for the characters.
+     */
+    public String intern(char[] chars, int offset, int length)
+    {
+        if (length > MAX_LENGTH) {
+            return new String(chars, offset, length);
+        }
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = (31 * hash) + chars[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (SIZE - 1);
+        String entry = entries[slot];
+        if ((entry != null) && equals(entry, chars, offset, length)) {
+            hits++;
+            return entry;
+        }
+        misses++;
+        entry = new String(chars, offset, length);
+        entries[slot] = entry;
+        return entry;
+    }
+
+    /**
+     * Returns the canonical string equal to the value.
+     */
+    public String intern(String value)
+    {
+        if (value.length() > MAX_LENGTH) {
+            return value;
+        }
+        int slot = (value.hashCode() ^ (value.hashCode() >>> 16)) & (SIZE - 1);
+        String entry = entries[slot];
+        if (value.equals(entry)) {
+            hits++;
+            return entry;
+        }
+        misses++;
+        entries[slot] = value;
+        return value;
+    }
+
+    /**
+     * Returns the canonical lower case form of the value.
+     */
+    public String internLowerCase(String value)
+    {
+        if (value.length() > MAX_LENGTH) {
+            return ColumnNameMap.toLowerCase(value);
+        }
+        int hash = ColumnNameMap.hash(value);
+        int slot = hash & (SIZE - 1);
+        String entry = entries[slot];
+        if ((entry != null) && ColumnNameMap.equalsLowerCase(entry, value)) {
+            hits++;
+            return entry;
+        }
+        misses++;
+        entry = ColumnNameMap.toLowerCase(value);
+        entries[slot] = entry;
+        return entry;
+    }
+
+    public long getHits()
+    {
+        return hits;
+    }
+
+    public long getMisses()
+    {
+        return misses;
+    }
+
+    private static boolean equals(String entry, char[] chars, int offset, int length)
+    {
+        if (entry.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (entry.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
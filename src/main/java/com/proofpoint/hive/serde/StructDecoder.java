@@ -0,0 +1,284 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.typeinfo.StructTypeInfo;
+import org.apache.hadoop.hive.serde2.typeinfo.TypeInfo;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+class StructDecoder
+        extends JsonDecoder
+{
+    private static final int MIN_PREDICTED_FIELDS = 64;
+
+    private final ColumnNameMap columnNames;
+    private final JsonDecoder[] fieldDecoders;
+    private final boolean[] presentFields;
+    private final RecordLimits limits;
+
+    // Field names in the order they appeared in the last object, including
+    // unknown fields. The parser canonicalizes field names, so a repeated
+    // name is the same String instance and can be compared by identity.
+    private final int maxPredictedFields;
+    private String[] predictedNames = new String[0];
+    private int[] predictedIndexes = new int[0];
+    private long predictionHits;
+    private long predictionMisses;
+
+    /**
+     * @param projected the fields to decode, or null for all fields
+     */
+    StructDecoder(String columnName, StructTypeInfo typeInfo, boolean[] projected, DecoderSettings settings)
+    {
+        super(columnName);
+        List<String> fieldNames = typeInfo.getAllStructFieldNames();
+        List<TypeInfo> fieldTypes = typeInfo.getAllStructFieldTypeInfos();
+
+        columnNames = settings.getColumnNameMap(typeInfo);
+        maxPredictedFields = Math.max(MIN_PREDICTED_FIELDS, fieldNames.size() * 2);
+        fieldDecoders = new JsonDecoder[fieldNames.size()];
+        presentFields = new boolean[fieldNames.size()];
+        limits = settings.getLimits();
+        for (int i = 0; i < fieldDecoders.length; i++) {
+            if ((projected == null) || projected[i]) {
+                String fieldName = columnNames.getColumnName(i);
+                String structColumn = (columnName == null) ? fieldName : (columnName + "." + fieldName);
+                fieldDecoders[i] = create(structColumn, fieldTypes.get(i), settings);
+            }
+        }
+    }
+
+    public int getFieldCount()
+    {
+        return fieldDecoders.length;
+    }
+
+    /**
+     * Returns the index of the field matching the name case-insensitively,
+     * or -1 if there is no such field.
+     */
+    public int getFieldIndex(String name)
+    {
+        return columnNames.get(name);
+    }
+
+    /**
+     * Returns the decoder for the field, or null if the field is skipped.
+     */
+    public JsonDecoder getFieldDecoder(int index)
+    {
+        return fieldDecoders[index];
+    }
+
+    @Override
+    protected Object decodeValue(JsonParser parser, Object reuse)
+            throws IOException, SerDeException
+    {
+        return decodeStruct(parser, (Object[]) reuse);
+    }
+
+    /**
+     * Decode the object at the current token. Any other value, including
+     * null, is treated as an object without fields, as in the tree path.
+     *
+     * @param reuse the previous struct created by this decoder, or null
+     */
+    public Object[] decodeStruct(JsonParser parser, Object[] reuse)
+            throws IOException, SerDeException
+    {
+        if (reuse == null) {
+            Object[] struct = new Object[fieldDecoders.length];
+            if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+                decodeFields(parser, struct);
+            }
+            else {
+                parser.skipChildren();
+            }
+            return struct;
+        }
+
+        if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+            boolean[] present = decodeFields(parser, reuse);
+            for (int i = 0; i < reuse.length; i++) {
+                if (!present[i]) {
+                    reuse[i] = null;
+                }
+            }
+        }
+        else {
+            parser.skipChildren();
+            Arrays.fill(reuse, null);
+        }
+        return reuse;
+    }
+
+    /**
+     * Decode the fields of the object at the current token into the struct,
+     * passing the existing field values to the field decoders for reuse.
+     *
+     * @return the fields that were present in the object
+     */
+    public boolean[] decodeFields(JsonParser parser, Object[] struct)
+            throws IOException, SerDeException
+    {
+        boolean[] present = presentFields;
+        Arrays.fill(present, false);
+
+        if (limits != null) {
+            limits.enterContainer();
+        }
+        int position = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            int index = getFieldIndex(parser.getCurrentName(), position);
+            position++;
+            if (limits != null) {
+                limits.checkObjectFields(position);
+            }
+            parser.nextToken();
+
+            JsonDecoder decoder = (index < 0) ? null : fieldDecoders[index];
+            if (decoder == null) {
+                parser.skipChildren();
+            }
+            else {
+                struct[index] = decoder.decode(parser, struct[index]);
+                present[index] = true;
+            }
+        }
+        if (limits != null) {
+            limits.exitContainer();
+        }
+        return present;
+    }
+
+    /**
+     * Decode the object at the current token into a row of the column
+     * vectors, which has a vector for each decoded field. Fields that are
+     * missing are null, and any other value is treated as an object without
+     * fields, as in {@link #decodeStruct}.
+     */
+    public void decodeVectors(JsonParser parser, byte[] bytes, int end, ColumnVector[] columns, int row)
+            throws IOException, SerDeException
+    {
+        boolean[] present = presentFields;
+        Arrays.fill(present, false);
+
+        if (parser.getCurrentToken() == JsonToken.START_OBJECT) {
+            if (limits != null) {
+                limits.enterContainer();
+            }
+            int position = 0;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                int index = getFieldIndex(parser.getCurrentName(), position);
+                position++;
+                if (limits != null) {
+                    limits.checkObjectFields(position);
+                }
+                parser.nextToken();
+
+                JsonDecoder decoder = (index < 0) ? null : fieldDecoders[index];
+                if (decoder == null) {
+                    parser.skipChildren();
+                }
+                else {
+                    decoder.decodeVector(parser, bytes, end, columns[index], row);
+                    present[index] = true;
+                }
+            }
+            if (limits != null) {
+                limits.exitContainer();
+            }
+        }
+        else {
+            parser.skipChildren();
+        }
+
+        for (int i = 0; i < columns.length; i++) {
+            if (!present[i] && (columns[i] != null)) {
+                columns[i].setNull(row);
+            }
+        }
+    }
+
+    /**
+     * Returns the index of the field at the position in the object, checking
+     * the name that was at this position in the last object before falling
+     * back to a lookup.
+     */
+    int getFieldIndex(String name, int position)
+    {
+        if ((position < predictedNames.length) && (predictedNames[position] == name)) {
+            predictionHits++;
+            return predictedIndexes[position];
+        }
+        predictionMisses++;
+        int index = columnNames.get(name);
+        if (position < maxPredictedFields) {
+            if (position >= predictedNames.length) {
+                growPredictions(position + 1);
+            }
+            predictedNames[position] = name;
+            predictedIndexes[position] = index;
+        }
+        return index;
+    }
+
+    private void growPredictions(int minimumSize)
+    {
+        int size = Math.min(Math.max(minimumSize, predictedNames.length * 2), maxPredictedFields);
+        String[] names = new String[size];
+        int[] indexes = new int[size];
+        System.arraycopy(predictedNames, 0, names, 0, predictedNames.length);
+        System.arraycopy(predictedIndexes, 0, indexes, 0, predictedIndexes.length);
+        predictedNames = names;
+        predictedIndexes = indexes;
+    }
+
+    @Override
+    public void addPredictionCounts(long[] counts)
+    {
+        counts[0] += predictionHits;
+        counts[1] += predictionMisses;
+        for (JsonDecoder decoder : fieldDecoders) {
+            if (decoder != null) {
+                decoder.addPredictionCounts(counts);
+            }
+        }
+    }
+
+    @Override
+    public Object decodeLazy(JsonParser parser, JsonSerde serde, byte[] bytes, int end)
+            throws IOException, SerDeException
+    {
+        JsonToken token = parser.getCurrentToken();
+        if (token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return new LazyJsonStruct(serde, this);
+        }
+        Object struct = new LazyJsonStruct(serde, bytes, LazyJsonObject.getTokenOffset(parser), end, this);
+        parser.skipChildren();
+        return struct;
+    }
+}
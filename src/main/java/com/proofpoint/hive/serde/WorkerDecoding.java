@@ -0,0 +1,77 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde2.SerDeException;
+
+import java.util.Properties;
+
+/**
+ * Decodes rows on the worker threads of {@link ParallelJsonRecordReader}
+ * for a serde. A serde requests this by attaching it to the
+ * {@link ParsedJsonText} values it reads. Serdes are not thread safe, so
+ * each worker thread decodes with its own copy of the serde, initialized
+ * with the same configuration and table properties.
+ */
+class WorkerDecoding
+{
+    private final Class<? extends JsonSerde> serdeClass;
+    private final Configuration configuration;
+    private final Properties table;
+    private final ThreadLocal<JsonSerde> serdes = new ThreadLocal<JsonSerde>();
+
+    WorkerDecoding(Class<? extends JsonSerde> serdeClass, Configuration configuration, Properties table)
+    {
+        this.serdeClass = serdeClass;
+        this.configuration = configuration;
+        this.table = new Properties();
+        this.table.putAll(table);
+    }
+
+    /**
+     * Decode the line into a row, or record the error from decoding it.
+     */
+    public void decode(ParsedJsonText line)
+    {
+        try {
+            line.setDecoded(this, getSerde().decodeOnWorker(line), null);
+        }
+        catch (SerDeException e) {
+            line.setDecoded(this, null, e);
+        }
+    }
+
+    private JsonSerde getSerde()
+            throws SerDeException
+    {
+        JsonSerde serde = serdes.get();
+        if (serde == null) {
+            try {
+                serde = serdeClass.newInstance();
+            }
+            catch (InstantiationException e) {
+                throw new SerDeException("cannot create serde for worker thread", e);
+            }
+            catch (IllegalAccessException e) {
+                throw new SerDeException("cannot create serde for worker thread", e);
+            }
+            serde.initializeWorker(configuration, table);
+            serdes.set(serde);
+        }
+        return serde;
+    }
+}
@@ -17,6 +17,9 @@ package com.proofpoint.hive.serde;
 
 import org.testng.annotations.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static org.testng.Assert.assertEquals;
@@ -43,4 +46,35 @@ public class TestCaseInsensitiveMap
         assertNull(map.get("foo"));
         assertFalse(map.containsKey("foo"));
     }
+
+    @Test
+    public void testOrderAndDuplicates()
+    {
+        Map<String, Integer> map = new CaseInsensitiveMap<Integer>();
+        Map<String, Integer> expected = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < 100; i++) {
+            String key = "Key-" + ((i * 37) % 100);
+            assertNull(map.put(key, i));
+            expected.put(key.toLowerCase(), i);
+            assertEquals(map.size(), i + 1);
+        }
+        assertEquals(map, expected);
+        assertEquals(new ArrayList<String>(map.keySet()), new ArrayList<String>(expected.keySet()));
+
+        assertEquals(map.put("KEY-37", 1000), Integer.valueOf(1));
+        assertEquals(map.get("key-37"), Integer.valueOf(1000));
+        assertEquals(map.size(), 100);
+
+        assertEquals(map.remove("kEY-0"), Integer.valueOf(0));
+        assertFalse(map.containsKey("key-0"));
+        assertEquals(map.get("Key-99"), Integer.valueOf(27));
+        assertEquals(map.size(), 99);
+        assertEquals(map.keySet().iterator().next(), "key-37");
+
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get("key-37"));
+        map.put("A", 1);
+        assertEquals(map, Collections.singletonMap("a", 1));
+    }
 }
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+import static com.proofpoint.hive.serde.JsonEventSerde.HIVE_FORMATTER;
+import static com.proofpoint.hive.serde.JsonEventSerde.ISO_FORMATTER;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class TestEventTimestampConverter
+{
+    @Test
+    public void testMatchesJoda()
+            throws Exception
+    {
+        String[] timestamps = {
+                "2011-10-12T17:45:01.123Z",
+                "2011-10-12T17:45:01.999Z",
+                "2011-10-12T17:45:02.000Z",
+                "2012-02-29T23:59:59.999Z",
+                "2000-02-29T00:00:00.000Z",
+                "0000-01-01T00:00:00.000Z",
+                "2011-10-12T17:45:01.123+02:00",
+                "2011-10-12T17:45:01.123-0800",
+                "2011-10-12T17:45:01.123z",
+                "2011-10-12T17:45:01.1Z",
+        };
+        EventTimestampConverter converter = new EventTimestampConverter();
+        for (String timestamp : timestamps) {
+            assertEquals(converter.toHiveTimestamp(timestamp), toHiveTimestamp(timestamp), timestamp);
+        }
+
+        Random random = new Random(1234);
+        for (int i = 0; i < 10000; i++) {
+            long millis = (long) (random.nextDouble() * 4000000000000L);
+            String timestamp = ISO_FORMATTER.print(millis);
+            assertEquals(converter.toHiveTimestamp(timestamp), toHiveTimestamp(timestamp), timestamp);
+        }
+    }
+
+    @Test
+    public void testInvalid()
+            throws Exception
+    {
+        String[] timestamps = {
+                "",
+                "abc",
+                "2011-10-12 17:45:01.123Z",
+                "2011-13-12T17:45:01.123Z",
+                "2011-00-12T17:45:01.123Z",
+                "2011-02-29T17:45:01.123Z",
+                "1900-02-29T17:45:01.123Z",
+                "2011-04-31T17:45:01.123Z",
+                "2011-10-12T24:45:01.123Z",
+                "2011-10-12T17:60:01.123Z",
+                "2011-10-12T17:45:60.123Z",
+                "2011-10-12T17:45:01.12xZ",
+                "2011-10-12T17:45:01Z",
+                "2011-1x-12T17:45:01.123Z",
+        };
+        EventTimestampConverter converter = new EventTimestampConverter();
+        for (String timestamp : timestamps) {
+            // a valid timestamp in the same second must not hide the error
+            converter.toHiveTimestamp("2011-10-12T17:45:01.000Z");
+            try {
+                converter.toHiveTimestamp(timestamp);
+                fail("expected exception: " + timestamp);
+            }
+            catch (SerDeException e) {
+                assertEquals(e.getMessage(), "invalid timestamp: " + timestamp);
+            }
+        }
+    }
+
+    private static String toHiveTimestamp(String timestamp)
+    {
+        return HIVE_FORMATTER.print(ISO_FORMATTER.parseMillis(timestamp));
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Properties;
+
+import static org.testng.Assert.assertEquals;
+
+public class TestJsonEventSerde
+{
+    @Test
+    public void testSerialize()
+            throws Exception
+    {
+        String json = "{\"uuid\":\"1234\",\"host\":\"example.com\",\"timestamp\":\"2011-10-12T17:45:01.123Z\"," +
+                "\"data\":{\"messageId\":\"abc\",\"size\":5,\"other\":true}}";
+
+        Properties properties = new Properties();
+        properties.setProperty(Constants.LIST_COLUMNS, "messageid,ts,size,uuid,host");
+        properties.setProperty(Constants.LIST_COLUMN_TYPES, "string,string,int,string,string");
+        JsonEventSerde serde = new JsonEventSerde();
+        serde.initialize(null, properties);
+
+        Object[] row = (Object[]) serde.deserialize(new Text(json));
+        assertEquals(row, new Object[] {"abc", "2011-10-12 17:45:01", 5, "1234", "example.com"});
+
+        Text serialized = (Text) serde.serialize(row, serde.getObjectInspector());
+        assertEquals(serialized.toString(), "{\"uuid\":\"1234\",\"host\":\"example.com\",\"timestamp\":\"2011-10-12T17:45:01.000Z\"," +
+                "\"data\":{\"messageid\":\"abc\",\"size\":5}}");
+        assertEquals((Object[]) serde.deserialize(serialized), row);
+    }
+
+    @Test
+    public void testStreamingMatchesTree()
+            throws Exception
+    {
+        String[] records = {
+                "{\"data\": {\"messageId\": \"abc\", \"size\": 5}, \"other\": [1, {}], \"uuid\": \"1234\", \"host\": \"example.com\", " +
+                        "\"timestamp\": \"2011-10-12T17:45:01.123Z\"}",
+                "{\"uuid\": \"1\", \"uuid\": \"2\", \"host\": \"h\", \"timestamp\": \"2011-10-12T17:45:01Z\", \"data\": {}, \"data\": {\"size\": 7}}",
+                "{\"uuid\": \"1\", \"host\": \"h\", \"timestamp\": \"2011-10-12T17:45:01.123+01:00\", \"data\": {\"uuid\": \"x\"}}",
+                "{\"uuid\": \"1\", \"host\": \"h\", \"timestamp\": \"2011-10-12T17:45:01.123Z\"}",
+                "{\"uuid\": \"1\", \"host\": \"h\", \"timestamp\": \"2011-10-12T17:45:01.123Z\", \"data\": {}, \"data\": null}",
+                "{\"uuid\": \"1\", \"host\": \"h\", \"timestamp\": \"2011-10-12T17:45:01.123Z\", \"data\": [{}]}",
+                "{\"uuid\": 1, \"host\": \"h\", \"timestamp\": \"2011-10-12T17:45:01.123Z\", \"data\": {}}",
+                "{\"uuid\": \"1\", \"timestamp\": \"2011-10-12T17:45:01.123Z\", \"data\": {}}",
+                "{\"uuid\": \"1\", \"host\": \"h\", \"timestamp\": \"yesterday\", \"data\": {}}",
+                "{\"host\": {\"name\": \"h\"}, \"data\": {\"size\": [1]}}",
+                "[{\"data\": {}}]",
+        };
+        for (String record : records) {
+            assertEquals(deserialize(true, record), deserialize(false, record), record);
+            assertEquals(deserialize(true, TestJsonSerde.toSmile(record)), deserialize(false, record), record);
+            assertEquals(deserialize(false, TestJsonSerde.toSmile(record)), deserialize(false, record), record);
+        }
+        assertEquals(deserialize(true, ""), "error parsing JSON");
+    }
+
+    @Test
+    public void testUnprojectedEnvelope()
+            throws Exception
+    {
+        Configuration configuration = new Configuration(false);
+        ColumnProjectionUtils.setReadColumnIDs(configuration, new ArrayList<Integer>(Arrays.asList(0)));
+
+        String record = "{\"uuid\": \"1\", \"host\": \"h\", \"timestamp\": \"2011-10-12T17:45:01.123Z\", \"data\": {\"messageId\": \"abc\"}}";
+        assertEquals(deserialize(true, configuration, new Text(record)), Arrays.asList("abc", null, null, null, null));
+        assertEquals(deserialize(false, configuration, new Text(record)), Arrays.asList("abc", null, null, null, null));
+
+        String[][] records = {
+                {"{\"uuid\": 1, \"host\": \"h\", \"timestamp\": \"2011-10-12T17:45:01.123Z\", \"data\": {}}", "uuid field is not text"},
+                {"{\"uuid\": \"1\", \"timestamp\": \"2011-10-12T17:45:01.123Z\", \"data\": {}}", "host field is missing"},
+                {"{\"uuid\": \"1\", \"host\": \"h\", \"timestamp\": \"yesterday\", \"data\": {}}", "invalid timestamp: yesterday"},
+        };
+        for (String[] invalid : records) {
+            assertEquals(deserialize(true, configuration, new Text(invalid[0])), invalid[1], invalid[0]);
+            assertEquals(deserialize(false, configuration, new Text(invalid[0])), invalid[1], invalid[0]);
+        }
+    }
+
+    private static Object deserialize(boolean streaming, String json)
+            throws SerDeException
+    {
+        return deserialize(streaming, new Text(json));
+    }
+
+    private static Object deserialize(boolean streaming, Writable record)
+            throws SerDeException
+    {
+        return deserialize(streaming, null, record);
+    }
+
+    private static Object deserialize(boolean streaming, Configuration configuration, Writable record)
+            throws SerDeException
+    {
+        Properties properties = new Properties();
+        properties.setProperty(Constants.LIST_COLUMNS, "messageid,ts,size,uuid,host");
+        properties.setProperty(Constants.LIST_COLUMN_TYPES, "string,string,int,string,string");
+        properties.setProperty("parse.streaming", String.valueOf(streaming));
+        JsonEventSerde serde = new JsonEventSerde();
+        serde.initialize(configuration, properties);
+        try {
+            return Arrays.asList((Object[]) serde.deserialize(record));
+        }
+        catch (SerDeException e) {
+            return e.getMessage();
+        }
+    }
+}
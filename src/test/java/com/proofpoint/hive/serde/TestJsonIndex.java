@@ -0,0 +1,322 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FSDataOutputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileInputFormat;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.apache.hadoop.mapred.Reporter;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+import static java.lang.String.format;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestJsonIndex
+{
+    private static final int RECORD_COUNT = 100;
+
+    private File directory;
+    private Path file;
+    private FileSystem fs;
+    private List<String> lines;
+
+    @BeforeMethod
+    public void setup()
+            throws Exception
+    {
+        directory = File.createTempFile("index", "");
+        directory.delete();
+        directory.mkdir();
+
+        lines = new ArrayList<String>();
+        for (int i = 0; i < RECORD_COUNT; i++) {
+            lines.add(format("{\"uuid\": \"u%s\", \"host\": \"h\", \"timestamp\": \"2011-10-12T%02d:%02d:00.000Z\", \"data\": {\"size\": %s}}",
+                    i, i / 60, i % 60, (i * 37) % 100));
+        }
+        lines.set(5, "invalid");
+        writeLines(new File(directory, "data.json"), lines, false);
+
+        JobConf job = new JobConf();
+        file = new Path(new File(directory, "data.json").getAbsolutePath());
+        fs = FileSystem.getLocal(job);
+    }
+
+    @AfterMethod
+    public void tearDown()
+    {
+        for (File child : directory.listFiles()) {
+            child.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testWriteIndex()
+            throws Exception
+    {
+        JsonIndex index = createWriter().writeIndex(fs, file);
+        assertEquals(index.getColumnNames(), asList("ts", "size"));
+        assertEquals(index.getBlocks().size(), 10);
+
+        JsonIndex read = JsonIndex.read(fs, file);
+        assertEquals(read.getBlocks().size(), 10);
+        JsonIndex.Block block = read.getBlocks().get(0);
+        assertEquals(block.getStart(), 0);
+        assertEquals(block.getRowCount(), 10);
+        assertEquals(block.getErrorRows(), 1);
+        assertEquals(read.getBlocks().get(1).getErrorRows(), 0);
+        assertEquals(block.getMin(0), "2011-10-12 00:00:00");
+        assertEquals(block.getMax(0), "2011-10-12 00:09:00");
+        assertEquals(block.getMin(1), 0L);
+        assertEquals(block.getMax(1), 96L);
+        assertEquals(read.getBlocks().get(1).getStart(), block.getEnd());
+        assertEquals(read.getBlocks().get(9).getEnd(), new File(directory, "data.json").length());
+
+        writeLines(new File(directory, "data.json"), asList("{}"), true);
+        assertEquals(JsonIndex.read(fs, file), null);
+    }
+
+    @Test
+    public void testSkipBlocks()
+            throws Exception
+    {
+        createWriter().writeIndex(fs, file);
+
+        // the first block has an invalid line, so it is never skipped
+        List<String> range = new ArrayList<String>(lines.subList(0, 10));
+        range.addAll(lines.subList(20, 40));
+        String filter = "((ts >= '2011-10-12 00:25:00') and (ts < '2011-10-12 00:35:00'))";
+        assertEquals(readRecords(filter, 1), range);
+        assertEquals(readRecords(filter, 7), range);
+        assertEquals(readRecords("((ts >= '2011-10-12 00:25:00') and (size = 100))", 3), lines.subList(0, 10));
+        List<String> expected = new ArrayList<String>(lines.subList(0, 20));
+        expected.addAll(lines.subList(40, 50));
+        expected.addAll(lines.subList(70, 80));
+        assertEquals(readRecords("(size <= 3)", 3), expected);
+        assertEquals(readRecords("((ts < '2011-10-12 00:05:00') or (size = 100))", 3), lines);
+        assertEquals(readRecords(null, 3), lines);
+    }
+
+    @Test
+    public void testInvalidIndex()
+            throws Exception
+    {
+        createWriter().writeIndex(fs, file);
+        byte[] valid = readIndex();
+        String filter = "((ts >= '2011-10-12 00:35:00') and (ts < '2011-10-12 00:45:00'))";
+        List<String> expected = new ArrayList<String>(lines.subList(0, 10));
+        expected.addAll(lines.subList(30, 50));
+        assertEquals(readRecords(filter, 3), expected);
+
+        // the previous version
+        byte[] corrupt = valid.clone();
+        corrupt[3] = 1;
+        writeIndex(corrupt);
+        assertEquals(JsonIndex.read(fs, file), null);
+        assertEquals(readRecords(filter, 3), lines);
+
+        // an invalid value type of the first minimum
+        corrupt = valid.clone();
+        corrupt[68] = 9;
+        writeIndex(corrupt);
+        assertEquals(JsonIndex.read(fs, file), null);
+        assertEquals(readRecords(filter, 3), lines);
+
+        // truncated
+        writeIndex(Arrays.copyOf(valid, valid.length - 5));
+        assertEquals(JsonIndex.read(fs, file), null);
+        assertEquals(readRecords(filter, 3), lines);
+
+        writeIndex(valid);
+        assertEquals(readRecords(filter, 3), expected);
+    }
+
+    @Test
+    public void testPredicates()
+    {
+        List<IndexPredicate> predicates = IndexPredicate.fromFilterText("((ts > 'a or b') and (Size <= -1.5) and (upper(host) = 'X'))");
+        assertEquals(predicates.size(), 2);
+        assertEquals(predicates.get(0).getColumnName(), "ts");
+        assertTrue(predicates.get(0).mightMatch("a", "b"));
+        assertFalse(predicates.get(0).mightMatch("a", "a or b"));
+        assertFalse(predicates.get(0).mightMatch(null, null));
+        assertEquals(predicates.get(1).getColumnName(), "size");
+        assertTrue(predicates.get(1).mightMatch(-2L, 5L));
+        assertFalse(predicates.get(1).mightMatch(-1L, 5L));
+        assertTrue(predicates.get(1).mightMatch("a", "b"));
+
+        assertTrue(IndexPredicate.fromFilterText("(not (size = 5))").isEmpty());
+        assertTrue(IndexPredicate.fromFilterText("(size = 5) OR (size = 6)").isEmpty());
+
+        // comparisons that are not operands of the top-level conjunction
+        assertTrue(IndexPredicate.fromFilterText("((ts = 'x') = false)").isEmpty());
+        assertTrue(IndexPredicate.fromFilterText("((ts = 'x') <> true)").isEmpty());
+        assertTrue(IndexPredicate.fromFilterText("if((ts = 'x'), false, true)").isEmpty());
+        assertTrue(IndexPredicate.fromFilterText("CASE WHEN (ts = 'x') THEN false ELSE true END").isEmpty());
+        assertTrue(IndexPredicate.fromFilterText("coalesce((ts = 'x'), true)").isEmpty());
+        assertTrue(IndexPredicate.fromFilterText("((ts = 'x') and (size = 1)) or (size = 2)").isEmpty());
+        assertTrue(IndexPredicate.fromFilterText("(ts = 'x') and (size = 1").isEmpty());
+
+        predicates = IndexPredicate.fromFilterText("(((ts = 'x') = false) and ((size = 5) AND (uuid >= 'a) and (b')))");
+        assertEquals(predicates.size(), 2);
+        assertEquals(predicates.get(0).getColumnName(), "size");
+        assertEquals(predicates.get(1).getColumnName(), "uuid");
+        assertTrue(predicates.get(1).mightMatch("a) and (b", "z"));
+        assertFalse(predicates.get(1).mightMatch("a", "a"));
+    }
+
+    @Test
+    public void testUtf8Order()
+            throws Exception
+    {
+        // U+1F600 is before U+FFFD in UTF-16, but after it in UTF-8
+        String supplementary = "\uD83D\uDE00";
+        String replacement = "\uFFFD";
+        assertTrue(IndexPredicate.compareUtf8(supplementary, replacement) > 0);
+        assertTrue(IndexPredicate.compareUtf8(replacement, supplementary) < 0);
+        assertTrue(IndexPredicate.compareUtf8("\uD7FF", supplementary) < 0);
+        assertTrue(IndexPredicate.compareUtf8("a" + supplementary, "a") > 0);
+        assertEquals(IndexPredicate.compareUtf8(supplementary, supplementary), 0);
+
+        List<String> records = new ArrayList<String>();
+        for (String uuid : asList(supplementary, replacement, "a")) {
+            records.add(format("{\"uuid\": \"%s\", \"host\": \"h\", \"timestamp\": \"2011-10-12T00:00:00.000Z\", \"data\": {}}", uuid));
+        }
+        lines = records;
+        writeLines(new File(directory, "data.json"), lines, false);
+
+        JsonIndex index = createWriter("uuid").writeIndex(fs, file);
+        assertEquals(index.getBlocks().size(), 1);
+        assertEquals(index.getBlocks().get(0).getMin(0), "a");
+        assertEquals(index.getBlocks().get(0).getMax(0), supplementary);
+
+        assertEquals(readRecords(format("(uuid > '%s')", replacement), 1), lines);
+        assertEquals(readRecords(format("(uuid > '%s')", supplementary), 1), asList());
+    }
+
+    private JsonIndexWriter createWriter()
+            throws Exception
+    {
+        return createWriter("ts,Size");
+    }
+
+    private JsonIndexWriter createWriter(String indexColumns)
+            throws Exception
+    {
+        Properties table = new Properties();
+        table.setProperty(Constants.LIST_COLUMNS, "ts,size,uuid");
+        table.setProperty(Constants.LIST_COLUMN_TYPES, "string,int,string");
+        table.setProperty("serde", JsonEventSerde.class.getName());
+        table.setProperty("index.columns", indexColumns);
+        table.setProperty("index.block.rows", "10");
+        return new JsonIndexWriter(table);
+    }
+
+    private List<String> readRecords(String filter, int numSplits)
+            throws IOException
+    {
+        JobConf job = new JobConf();
+        FileInputFormat.setInputPaths(job, new Path(directory.getAbsolutePath()));
+        if (filter != null) {
+            job.set("hive.io.filter.text", filter);
+        }
+        IndexedJsonInputFormat format = new IndexedJsonInputFormat();
+        format.configure(job);
+
+        List<String> records = new ArrayList<String>();
+        for (InputSplit split : format.getSplits(job, numSplits)) {
+            RecordReader<LongWritable, Text> reader = format.getRecordReader(split, job, Reporter.NULL);
+            LongWritable key = reader.createKey();
+            Text value = reader.createValue();
+            while (reader.next(key, value)) {
+                records.add(value.toString());
+            }
+            reader.close();
+        }
+        return records;
+    }
+
+    private byte[] readIndex()
+            throws IOException
+    {
+        Path path = JsonIndex.getIndexPath(file);
+        byte[] bytes = new byte[(int) fs.getFileStatus(path).getLen()];
+        FSDataInputStream in = fs.open(path);
+        try {
+            in.readFully(bytes);
+        }
+        finally {
+            in.close();
+        }
+        return bytes;
+    }
+
+    private void writeIndex(byte[] bytes)
+            throws IOException
+    {
+        FSDataOutputStream out = fs.create(JsonIndex.getIndexPath(file), true);
+        try {
+            out.write(bytes);
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static List<String> asList(String... values)
+    {
+        List<String> list = new ArrayList<String>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static void writeLines(File file, List<String> lines, boolean append)
+            throws IOException
+    {
+        OutputStream out = new FileOutputStream(file, append);
+        try {
+            for (String line : lines) {
+                out.write((line + "\n").getBytes("UTF-8"));
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+}
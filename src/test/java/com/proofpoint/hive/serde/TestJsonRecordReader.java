@@ -0,0 +1,238 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.FileSplit;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class TestJsonRecordReader
+{
+    private static final String[] RECORDS = {
+            "{\"a\": 1}",
+            "{\n  \"b\": \"x}\\\"{\",\n  \"c\": [1, {\"d\": [2]}]\n}",
+            "{\"e\": {}}",
+            "{\"f\": \"\\\\\"}",
+            "{\n    \"g\": {\n        \"h\": null\n    }\n}",
+    };
+
+    @Test
+    public void testRecords()
+            throws Exception
+    {
+        String data = "[" + RECORDS[0] + ",\n" + RECORDS[1] + "\n" + RECORDS[2] + RECORDS[3] + "\n\n  " + RECORDS[4] + "]\n";
+        File file = writeFile(data);
+        try {
+            List<String> records = new ArrayList<String>();
+            List<Long> keys = new ArrayList<Long>();
+            readSplit(file, 0, file.length(), records, keys);
+            assertEquals(records, Arrays.asList(RECORDS));
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals(data.substring((int) (long) keys.get(i)).indexOf(RECORDS[i]), 0);
+            }
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testSplits()
+            throws Exception
+    {
+        StringBuilder data = new StringBuilder();
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            String record = RECORDS[i % RECORDS.length];
+            expected.add(record);
+            data.append(record).append((i % 3 == 0) ? "\r\n" : "\n");
+        }
+        File file = writeFile(data.toString());
+        try {
+            for (int split = 0; split <= file.length(); split++) {
+                List<String> records = new ArrayList<String>();
+                readSplit(file, 0, split, records, new ArrayList<Long>());
+                readSplit(file, split, file.length() - split, records, new ArrayList<Long>());
+                assertEquals(records, expected, "split at " + split);
+            }
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testLargeRecords()
+            throws Exception
+    {
+        char[] chars = new char[100000];
+        Arrays.fill(chars, '{');
+        String large = "{\"a\": \"" + new String(chars) + "\", \"b\": [" + RECORDS[1] + "]}";
+        File file = writeFile(large + large + "\n" + RECORDS[0]);
+        try {
+            List<String> records = new ArrayList<String>();
+            readSplit(file, 0, file.length(), records, new ArrayList<Long>());
+            assertEquals(records, Arrays.asList(large, large, RECORDS[0]));
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testTruncatedRecord()
+            throws Exception
+    {
+        char[] chars = new char[60];
+        Arrays.fill(chars, 'x');
+        String truncated = "{\"b\": \"" + new String(chars) + "\n";
+        StringBuilder data = new StringBuilder(RECORDS[0]).append("\n").append(truncated);
+        List<String> expected = new ArrayList<String>();
+        expected.add(RECORDS[0]);
+        for (int i = 0; i < 10; i++) {
+            String record = "{\"c\": " + i + "}";
+            expected.add(record);
+            data.append(record).append("\n");
+        }
+        File file = writeFile(data.toString());
+        try {
+            JobConf job = new JobConf();
+            job.setInt(JsonRecordReader.MAX_LENGTH_CONF, 50);
+            JsonRecordReader reader = new JsonRecordReader(job, new FileSplit(new Path(file.getAbsolutePath()), 0, file.length(), new String[0]));
+            List<String> records = new ArrayList<String>();
+            LongWritable key = reader.createKey();
+            Text value = reader.createValue();
+            while (reader.next(key, value)) {
+                records.add(value.toString());
+            }
+            reader.close();
+            assertEquals(records, expected);
+            assertEquals(reader.getSkippedBytes(), truncated.length());
+
+            // the truncated record is not read past the end of its split
+            for (int split = 0; split <= file.length(); split++) {
+                records = new ArrayList<String>();
+                readSplit(job, file, 0, split, records);
+                readSplit(job, file, split, file.length() - split, records);
+                assertEquals(records, expected, "split at " + split);
+            }
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMaxLengthAtBufferEnd()
+            throws Exception
+    {
+        // the first record starts at the last byte of the first buffer
+        char[] padding = new char[64 * 1024 - 1];
+        Arrays.fill(padding, ' ');
+        padding[padding.length - 1] = '\n';
+        String data = new String(padding) + "{\"a\": 1}\n{\"b\": 2}\n";
+        File file = writeFile(data);
+        try {
+            JobConf job = new JobConf();
+            job.setInt(JsonRecordReader.MAX_LENGTH_CONF, 1);
+            List<String> records = new ArrayList<String>();
+            readSplit(job, file, 0, file.length(), records);
+            assertEquals(records, new ArrayList<String>());
+
+            job.setInt(JsonRecordReader.MAX_LENGTH_CONF, 8);
+            readSplit(job, file, 0, file.length(), records);
+            assertEquals(records, Arrays.asList("{\"a\": 1}", "{\"b\": 2}"));
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testInvalidMaxLength()
+            throws Exception
+    {
+        File file = writeFile(RECORDS[0]);
+        try {
+            JobConf job = new JobConf();
+            job.setInt(JsonRecordReader.MAX_LENGTH_CONF, 0);
+            readSplit(job, file, 0, file.length(), new ArrayList<String>());
+            fail("expected exception");
+        }
+        catch (IllegalArgumentException e) {
+            assertEquals(e.getMessage(), "max record length must be positive: 0");
+        }
+        finally {
+            file.delete();
+        }
+    }
+
+    private static void readSplit(JobConf job, File file, long start, long length, List<String> records)
+            throws IOException
+    {
+        FileSplit split = new FileSplit(new Path(file.getAbsolutePath()), start, length, new String[0]);
+        RecordReader<LongWritable, Text> reader = new JsonRecordReader(job, split);
+        LongWritable key = reader.createKey();
+        Text value = reader.createValue();
+        while (reader.next(key, value)) {
+            records.add(value.toString());
+        }
+        reader.close();
+    }
+
+    private static void readSplit(File file, long start, long length, List<String> records, List<Long> keys)
+            throws IOException
+    {
+        FileSplit split = new FileSplit(new Path(file.getAbsolutePath()), start, length, new String[0]);
+        RecordReader<LongWritable, Text> reader = new JsonRecordReader(new JobConf(), split);
+        LongWritable key = reader.createKey();
+        Text value = reader.createValue();
+        while (reader.next(key, value)) {
+            records.add(value.toString());
+            keys.add(key.get());
+        }
+        reader.close();
+    }
+
+    private static File writeFile(String data)
+            throws IOException
+    {
+        File file = File.createTempFile("records", ".json");
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(data.getBytes("UTF-8"));
+        }
+        finally {
+            out.close();
+        }
+        return file;
+    }
+}
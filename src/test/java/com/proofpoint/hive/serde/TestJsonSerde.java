@@ -0,0 +1,792 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.ColumnProjectionUtils;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.hive.serde2.objectinspector.ListObjectInspector;
+import org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.ObjectInspectorCopyOption;
+import org.apache.hadoop.hive.serde2.objectinspector.StructObjectInspector;
+import org.apache.hadoop.io.BinaryComparable;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.IntWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.smile.SmileFactory;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.apache.hadoop.hive.serde2.objectinspector.ObjectInspectorUtils.copyToStandardObject;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+public class TestJsonSerde
+{
+    private static final String COLUMNS = "messageid,messagesize,flag,ratio,recipients,messageparts,headers";
+    private static final String TYPES = "string,int,boolean,double,array<string>,array<struct<extension:string,size:bigint>>,map<string,string>";
+
+    @Test
+    public void testDeserialize()
+            throws Exception
+    {
+        String json = "{\"messageId\":\"abc\",\"messageSize\":123,\"flag\":true,\"ratio\":1.5," +
+                "\"recipients\":[\"a@b.com\",null],\"messageParts\":[{\"extension\":\"pdf\",\"SIZE\":4567,\"x\":[1,{}]}]," +
+                "\"headers\":{\"Received-SPF\":\"pass\"},\"unknown\":{\"a\":[1,2,{\"b\":null}]}}";
+
+        for (boolean streaming : new boolean[] {false, true}) {
+            Object[] row = (Object[]) createSerde(streaming, false).deserialize(new Text(json));
+            assertEquals(row[0], "abc");
+            assertEquals(row[1], 123);
+            assertEquals(row[2], true);
+            assertEquals(row[3], 1.5);
+            assertEquals(row[4], Arrays.asList("a@b.com", null));
+            List<?> parts = (List<?>) row[5];
+            assertEquals(parts.size(), 1);
+            assertEquals((Object[]) parts.get(0), new Object[] {"pdf", 4567L});
+            assertEquals(((Map<?, ?>) row[6]).get("received-spf"), "pass");
+        }
+    }
+
+    @Test
+    public void testStreamingMatchesTree()
+            throws Exception
+    {
+        String[] records = {
+                "{}",
+                "null",
+                "[1, 2]",
+                "{\"messageid\": 123, \"messagesize\": \"123\", \"flag\": 1, \"ratio\": 7}",
+                "{\"messagesize\": 12345678901, \"ratio\": 123456789012345678901234567890}",
+                "{\"messagesize\": 1.9, \"recipients\": []}",
+                "{\"messageparts\": [{\"size\": 2.5}, null, 7]}",
+                "{\"headers\": {\"a\": \"1\", \"a\": \"2\", \"b\": null, \"B\": \"3\"}}",
+                "{\"MessageId\": \"first\", \"messageid\": \"second\"}",
+        };
+        for (String record : records) {
+            assertEquals(deserialize(true, record), deserialize(false, record), record);
+        }
+    }
+
+    @Test
+    public void testStreamingErrors()
+            throws Exception
+    {
+        String[] records = {
+                "",
+                "{\"messageid\": ",
+                "{\"messageid\": [1]}",
+                "{\"messageid\": {\"a\": 1}}",
+                "{\"recipients\": \"a\"}",
+                "{\"messageparts\": 5}",
+                "{\"recipients\": 12345678901}",
+                "{\"headers\": [1]}",
+                "{\"headers\": {\"a\": \"1\", \"A\": \"2\"}}",
+                "{\"messageparts\": [{\"extension\": [1]}]}",
+        };
+        for (String record : records) {
+            String expected = getErrorMessage(false, record);
+            assertEquals(getErrorMessage(true, record), expected, record);
+            assertNull(createSerde(true, true).deserialize(new Text(record)));
+        }
+    }
+
+    @Test
+    public void testLazyMatchesStreaming()
+            throws Exception
+    {
+        String[] records = {
+                "{}",
+                "  [1, 2]",
+                "{\"messageId\":\"a\\\"b\",\"messageSize\":123,\"recipients\":[\"x\", null, \"\\u00e9\"],\"other\":[{}]}",
+                "{\"messageparts\": [{\"extension\": \"pdf\", \"size\": 2.5}, null, 7, {\"EXTENSION\": \"doc\"}]}",
+                "{\"headers\": {\"A\": \"1\", \"b\": null, \"B\": \"2\"}, \"flag\": false}",
+                "{\"messageid\": \"caf\u00e9 \\u00e9\\n\", \"recipients\": [\"\u00fc\", \"\", \"x\\\"\"], \"headers\": {\"k\": \"\u00e8\"}}",
+                "{\"messageid\": \"\\ud83d\\ude00 \\/\\t\\\\\\b\", \"recipients\": [\"a\\u00E9b\\f\\r\", \"\u00e8\\\"\"]}",
+        };
+        for (String record : records) {
+            JsonSerde streamingSerde = createSerde(true, false);
+            Object expected = copyToStandardObject(streamingSerde.deserialize(new Text(record)), streamingSerde.getObjectInspector());
+
+            for (boolean lazyStrings : new boolean[] {false, true}) {
+                Properties properties = createProperties(false, false);
+                properties.setProperty("parse.lazy", "true");
+                properties.setProperty("strings.lazy", String.valueOf(lazyStrings));
+                JsonSerde lazySerde = new JsonSerde();
+                lazySerde.initialize(null, properties);
+                Object row = lazySerde.deserialize(new Text(record));
+                Object actual = copyToStandardObject(row, lazySerde.getObjectInspector(), ObjectInspectorCopyOption.JAVA);
+
+                assertEquals(actual, expected, record);
+            }
+        }
+    }
+
+    @Test
+    public void testLazyErrors()
+            throws Exception
+    {
+        String json = "{\"messageid\": \"abc\", \"recipients\": [\"a\", {}]}";
+
+        Properties properties = createProperties(false, true);
+        properties.setProperty("parse.lazy", "true");
+        JsonSerde serde = new JsonSerde();
+        serde.initialize(null, properties);
+        StructObjectInspector inspector = (StructObjectInspector) serde.getObjectInspector();
+        Object row = serde.deserialize(new Text(json));
+        assertEquals(inspector.getStructFieldData(row, inspector.getStructFieldRef("messageid")), "abc");
+        ListObjectInspector listInspector = (ListObjectInspector) inspector.getStructFieldRef("recipients").getFieldObjectInspector();
+        Object recipients = inspector.getStructFieldData(row, inspector.getStructFieldRef("recipients"));
+        assertEquals(listInspector.getListLength(recipients), 0);
+
+        properties.setProperty("errors.ignore", "false");
+        serde.initialize(null, properties);
+        row = serde.deserialize(new Text(json));
+        recipients = inspector.getStructFieldData(row, inspector.getStructFieldRef("recipients"));
+        try {
+            listInspector.getListElement(recipients, 1);
+            fail("expected exception");
+        }
+        catch (RuntimeException e) {
+            assertEquals(e.getCause().getMessage(), "expected primitive, found ObjectNode for column recipients");
+        }
+    }
+
+    @Test
+    public void testDeserializeBatch()
+            throws Exception
+    {
+        String[] records = {
+                "{\"messageId\":\"abc\",\"messageSize\":123,\"flag\":true,\"ratio\":1.5,\"recipients\":[\"a\",null],\"headers\":{\"A\":\"1\"}}",
+                "{}",
+                "[1, 2]",
+                "{\"messageid\": \"caf\u00e9 \\u00e9\\n\", \"messagesize\": 12345678901, \"flag\": 1, \"ratio\": \"7\"}",
+                "{\"messageid\": 5, \"messagesize\": null, \"messageparts\": [{\"size\": 2.5}, null]}",
+                "{\"messageid\": \"first\", \"MessageId\": \"second\"}",
+        };
+
+        JsonSerde serde = createSerde(true, false);
+        RowBatch batch = serde.createRowBatch(4);
+        for (int offset = 0; offset < records.length; offset += batch.getCapacity()) {
+            int count = Math.min(batch.getCapacity(), records.length - offset);
+            Text[] texts = new Text[count];
+            for (int i = 0; i < count; i++) {
+                texts[i] = new Text(records[offset + i]);
+            }
+            serde.deserializeBatch(texts, count, batch);
+            assertEquals(batch.getSize(), count);
+
+            for (int row = 0; row < count; row++) {
+                Object[] expected = (Object[]) createSerde(true, false).deserialize(texts[row]);
+                assertEquals(Arrays.asList(deepToList(getBatchRow(batch, row))), Arrays.asList(deepToList(expected)), records[offset + row]);
+            }
+        }
+
+        // only UTF-8 text is referenced by byte offsets
+        byte[] utf16 = "{\"z\":\"qqq\",\"messageid\":\"abcdef\"}".getBytes("UTF-16BE");
+        serde.deserializeBatch(new BinaryComparable[] {new BytesWritable(utf16), toSmile("{\"messageid\": \"ghi\"}")}, 2, batch);
+        assertEquals(((ColumnVector.BytesColumnVector) batch.getColumn(0)).getString(0), "abcdef");
+        assertEquals(((ColumnVector.BytesColumnVector) batch.getColumn(0)).getString(1), "ghi");
+
+        Properties properties = createProperties(false, true);
+        properties.setProperty(Constants.LIST_COLUMNS, "messageid,messagesize");
+        properties.setProperty(Constants.LIST_COLUMN_TYPES, "string,int");
+        Configuration configuration = new Configuration(false);
+        ColumnProjectionUtils.setReadColumnIDs(configuration, new ArrayList<Integer>(Arrays.asList(1)));
+        serde.initialize(configuration, properties);
+        batch = serde.createRowBatch(2);
+        assertNull(batch.getColumn(0));
+        serde.deserializeBatch(new Text[] {new Text("{\"messagesize\": 7}"), new Text("{\"messagesize\": [7]}")}, 2, batch);
+        ColumnVector.LongColumnVector sizes = (ColumnVector.LongColumnVector) batch.getColumn(1);
+        assertEquals(sizes.vector[0], 7);
+        assertEquals(sizes.isNull, new boolean[] {false, true});
+    }
+
+    @Test
+    public void testRowReuse()
+            throws Exception
+    {
+        String[] records = {
+                "{\"messageId\":\"abc\",\"messageSize\":123,\"recipients\":[\"a\",\"b\",\"c\"],\"messageParts\":[{\"extension\":\"pdf\",\"size\":1}]}",
+                "{\"messageSize\":456,\"recipients\":[\"d\",null],\"messageParts\":[{\"size\":2},{\"extension\":\"doc\"}],\"headers\":{\"A\":\"1\"}}",
+                "{\"ratio\":2.5,\"flag\":true,\"recipients\":null,\"headers\":{\"b\":\"2\"}}",
+                "[1, 2]",
+                "{\"messageId\":\"def\",\"messageParts\":[]}",
+        };
+
+        Properties properties = createProperties(true, false);
+        properties.setProperty("row.reuse", "true");
+        JsonSerde serde = new JsonSerde();
+        serde.initialize(null, properties);
+
+        Object first = serde.deserialize(new Text(records[0]));
+        assertEquals(((Object[]) first)[0], new Text("abc"));
+        assertEquals(((Object[]) first)[1], new IntWritable(123));
+
+        for (String record : records) {
+            JsonSerde streamingSerde = createSerde(true, false);
+            Object expected = copyToStandardObject(streamingSerde.deserialize(new Text(record)), streamingSerde.getObjectInspector());
+
+            Object row = serde.deserialize(new Text(record));
+            assertSame(row, first);
+            Object actual = copyToStandardObject(row, serde.getObjectInspector(), ObjectInspectorCopyOption.JAVA);
+            assertEquals(actual, expected, record);
+        }
+
+        properties.setProperty("parse.lazy", "true");
+        try {
+            serde.initialize(null, properties);
+            fail("expected exception");
+        }
+        catch (SerDeException e) {
+            assertEquals(e.getMessage(), "row reuse is not supported with lazy parsing");
+        }
+    }
+
+    @Test
+    public void testSerialize()
+            throws Exception
+    {
+        JsonSerde serde = createSerde(true, false);
+        Object row = serde.deserialize(new Text("{\"messageId\":\"a\\\"\u00e9\",\"messageSize\":5,\"recipients\":[\"x\",null],\"headers\":{\"K\":null},\"unknown\":1}"));
+        assertEquals(serde.serialize(row, serde.getObjectInspector()).toString(),
+                "{\"messageid\":\"a\\\"\u00e9\",\"messagesize\":5,\"recipients\":[\"x\",null],\"headers\":{\"k\":null}}");
+        assertEquals(serde.getSerializedClass(), Text.class);
+    }
+
+    @Test
+    public void testSerializeRoundTrip()
+            throws Exception
+    {
+        String json = "{\"messageId\":\"abc\",\"messageSize\":123,\"flag\":false,\"ratio\":-1.25e10," +
+                "\"recipients\":[\"a@b.com\",null,\"\\u0001\\n\"],\"messageParts\":[{\"extension\":\"pdf\",\"SIZE\":4567},null,{}]," +
+                "\"headers\":{\"Received-SPF\":\"pass\",\"x\":\"\u00fc\"}}";
+
+        JsonSerde streamingSerde = createSerde(true, false);
+        Object expected = copyToStandardObject(streamingSerde.deserialize(new Text(json)), streamingSerde.getObjectInspector());
+
+        for (String mode : new String[] {"parse.streaming", "row.reuse", "parse.lazy", "strings.lazy"}) {
+            Properties properties = createProperties(false, false);
+            properties.setProperty(mode, "true");
+            if (mode.equals("strings.lazy")) {
+                properties.setProperty("parse.lazy", "true");
+            }
+            JsonSerde serde = new JsonSerde();
+            serde.initialize(null, properties);
+            Text serialized = (Text) serde.serialize(serde.deserialize(new Text(json)), serde.getObjectInspector());
+
+            Object actual = copyToStandardObject(streamingSerde.deserialize(serialized), streamingSerde.getObjectInspector());
+            assertEquals(actual, expected, mode);
+        }
+    }
+
+    @Test
+    public void testInterning()
+            throws Exception
+    {
+        Properties properties = createProperties(true, false);
+        properties.setProperty("columns.intern", "messageid, MessageParts.Extension,headers");
+        JsonSerde serde = new JsonSerde();
+        serde.initialize(null, properties);
+
+        String json = "{\"messageId\":\"abc\",\"recipients\":[\"x\"],\"messageParts\":[{\"extension\":\"pdf\"},{\"extension\":\"pdf\"}],\"headers\":{\"Received-SPF\":\"pass\"}}";
+        Object[] first = (Object[]) serde.deserialize(new Text(json));
+        Object[] second = (Object[]) serde.deserialize(new Text(json));
+
+        assertSame(second[0], first[0]);
+        assertSame(((Object[]) ((List<?>) second[5]).get(1))[0], ((Object[]) ((List<?>) first[5]).get(0))[0]);
+        assertSame(((Map<?, ?>) second[6]).keySet().iterator().next(), ((Map<?, ?>) first[6]).keySet().iterator().next());
+        assertSame(((Map<?, ?>) second[6]).get("received-spf"), ((Map<?, ?>) first[6]).get("received-spf"));
+        assertEquals(((List<?>) second[4]).get(0), "x");
+
+        assertEquals(serde.getInternCacheHits("messageid"), 1);
+        assertEquals(serde.getInternCacheMisses("messageid"), 1);
+        assertEquals(serde.getInternCacheHits("messageparts.extension"), 3);
+        assertEquals(serde.getInternCacheMisses("messageparts.extension"), 1);
+        assertEquals(serde.getInternCacheHits("headers"), 2);
+        assertEquals(serde.getInternCacheMisses("headers"), 2);
+        assertEquals(serde.getInternCacheHits("recipients"), 0);
+
+        // keys of a map do not evict its values
+        json = "{\"headers\":{\"pass\":\"pass\"}}";
+        first = (Object[]) serde.deserialize(new Text(json));
+        second = (Object[]) serde.deserialize(new Text(json));
+        assertSame(((Map<?, ?>) second[6]).get("pass"), ((Map<?, ?>) first[6]).get("pass"));
+        // only the first "pass" key misses, as the value was seen above
+        assertEquals(serde.getInternCacheHits("headers"), 2 + 3);
+        assertEquals(serde.getInternCacheMisses("headers"), 2 + 1);
+    }
+
+    @Test
+    public void testSchemaCache()
+            throws Exception
+    {
+        JsonSerde first = createSerde(false, false);
+        JsonSerde second = createSerde(true, true);
+        assertSame(second.getObjectInspector(), first.getObjectInspector());
+
+        Properties properties = createProperties(true, false);
+        properties.setProperty("row.reuse", "true");
+        JsonSerde reuse = new JsonSerde();
+        reuse.initialize(null, properties);
+        assertNotSame(reuse.getObjectInspector(), first.getObjectInspector());
+
+        properties.setProperty(Constants.LIST_COLUMN_TYPES, "string,int");
+        try {
+            reuse.initialize(null, properties);
+            fail("expected exception");
+        }
+        catch (SerDeException e) {
+            assertEquals(e.getMessage(), "columns size (7) does not match column types size (2)");
+        }
+    }
+
+    @Test
+    public void testPrefilter()
+            throws Exception
+    {
+        Properties properties = createProperties(true, false);
+        properties.setProperty("filter.column", "messageId");
+        properties.setProperty("filter.values", "a,b");
+        JsonSerde serde = new JsonSerde();
+        serde.initialize(null, properties);
+
+        assertEquals(((Object[]) serde.deserialize(new Text("{\"x\": {\"messageid\": \"c\"}, \"MessageId\": \"\\u0061\"}")))[0], "a");
+        assertEquals(((Object[]) serde.deserialize(new Text("{\"messageid\": \"c\", \"messageid\": \"b\"}")))[0], "b");
+        // the type error of a rejected row is not raised, although errors are not ignored
+        assertNull(serde.deserialize(new Text("{\"messageid\": \"c\", \"recipients\": 5}")));
+        assertNull(serde.deserialize(new Text("{\"messageid\": \"A\"}")));
+        assertNull(serde.deserialize(new Text("{\"messageid\": null}")));
+        assertNull(serde.deserialize(new Text("{\"messagesize\": 5}")));
+        assertEquals(serde.getPrefilterRejectedRows(), 4);
+
+        // non-string values are left to the full parse
+        Object[] row = (Object[]) serde.deserialize(new Text("{\"messageid\": 5, \"messagesize\": 7}"));
+        assertNull(row[0]);
+        assertEquals(row[1], 7);
+        row = (Object[]) serde.deserialize(new Text("{\"messagesize\": 8, \"messageid\": true}"));
+        assertNull(row[0]);
+        assertEquals(row[1], 8);
+        assertEquals(serde.getPrefilterRejectedRows(), 4);
+
+        assertEquals(getErrorMessage(serde, "{\"messageid\": [\"c\"]}"), "expected primitive, found ArrayNode for column messageid");
+        assertEquals(getErrorMessage(serde, "{\"messageid\": \"a\", \"recipients\": 5}"), "expected list, found IntNode for column recipients");
+        assertEquals(getErrorMessage(serde, "{\"messageid\": \"c\", "), "error parsing JSON: org.codehaus.jackson.JsonParseException");
+        assertEquals(serde.getPrefilterRejectedRows(), 4);
+
+        properties = createProperties(true, false);
+        properties.setProperty("filter.pushdown", "true");
+        Configuration configuration = new Configuration(false);
+        configuration.set("hive.io.filter.text", "(messageid = 'a')");
+        serde.initialize(configuration, properties);
+        assertNull(serde.deserialize(new Text("{\"messageid\": \"b\"}")));
+
+        configuration.set("hive.io.filter.text", "(messagesize = '5')");
+        serde.initialize(configuration, properties);
+        assertEquals(((Object[]) serde.deserialize(new Text("{\"messageid\": \"b\"}")))[0], "b");
+        assertEquals(serde.getPrefilterRejectedRows(), 0);
+    }
+
+    @Test
+    public void testColumnMapping()
+            throws Exception
+    {
+        String json = "{\"messageId\": \"a\", \"envelope\": {\"from\": {\"domain\": \"x.com\", \"name\": \"X\", \"other\": [1]}, " +
+                "\"Subject\": \"hi\", \"to\": {\"domain\": \"y.com\"}}, \"meta\": {\"size\": 5}, \"size\": 6}";
+
+        for (boolean streaming : new boolean[] {false, true}) {
+            JsonSerde serde = new JsonSerde();
+            serde.initialize(null, createMappingProperties(streaming));
+            assertEquals(serde.deserialize(new Text(json)), new Object[] {"a", "x.com", "X", "hi", 5});
+            assertEquals(serde.deserialize(new Text("{\"envelope\": {\"from\": null, \"subject\": \"s\"}, \"meta\": 7}")),
+                    new Object[] {null, null, null, "s", null});
+            assertEquals(getErrorMessage(serde, "{\"envelope\": {\"from\": {\"domain\": [1]}}}"),
+                    "expected primitive, found ArrayNode for column envelope.from.domain");
+        }
+
+        Properties properties = createMappingProperties(true);
+        properties.setProperty("row.reuse", "true");
+        JsonSerde serde = new JsonSerde();
+        serde.initialize(null, properties);
+        Object[] row = (Object[]) serde.deserialize(new Text(json));
+        assertEquals(row[1], new Text("x.com"));
+        row = (Object[]) serde.deserialize(new Text("{\"envelope\": {\"subject\": \"s\"}}"));
+        assertEquals(row, new Object[] {null, null, null, new Text("s"), null});
+
+        properties = createMappingProperties(true);
+        properties.setProperty("mapping.subject", "envelope.from");
+        assertEquals(getInitializeErrorMessage(properties), "mapping for column subject conflicts with column sender_domain");
+        properties = createMappingProperties(true);
+        properties.setProperty("mapping.size", "messageid.size");
+        assertEquals(getInitializeErrorMessage(properties), "mapping for column size conflicts with column messageid");
+        properties = createMappingProperties(true);
+        properties.setProperty("mapping.missing", "envelope.to");
+        assertEquals(getInitializeErrorMessage(properties), "mapping for unknown column: missing");
+    }
+
+    private static Properties createMappingProperties(boolean streaming)
+    {
+        Properties properties = createProperties(streaming, false);
+        properties.setProperty(Constants.LIST_COLUMNS, "messageid,sender_domain,sender_name,subject,size");
+        properties.setProperty(Constants.LIST_COLUMN_TYPES, "string,string,string,string,int");
+        properties.setProperty("mapping.sender_domain", "envelope.from.domain");
+        properties.setProperty("mapping.Sender_Name", "Envelope.From.Name");
+        properties.setProperty("mapping.subject", "envelope.subject");
+        properties.setProperty("mapping.size", "meta.size");
+        return properties;
+    }
+
+    private static String getInitializeErrorMessage(Properties properties)
+    {
+        try {
+            new JsonSerde().initialize(null, properties);
+            fail("expected exception");
+        }
+        catch (SerDeException e) {
+            return e.getMessage();
+        }
+        return null;
+    }
+
+    @Test
+    public void testProjection()
+            throws Exception
+    {
+        Configuration configuration = new Configuration(false);
+        ColumnProjectionUtils.setReadColumnIDs(configuration, new ArrayList<Integer>(Arrays.asList(1, 4)));
+
+        String json = "{\"messageId\":\"abc\",\"messageSize\":123,\"recipients\":[\"a@b.com\"],\"headers\":{\"a\":\"b\"}}";
+        for (boolean streaming : new boolean[] {false, true}) {
+            JsonSerde serde = new JsonSerde();
+            serde.initialize(configuration, createProperties(streaming, false));
+            Object[] row = (Object[]) serde.deserialize(new Text(json));
+            assertEquals(row, new Object[] {null, 123, null, null, Arrays.asList("a@b.com"), null, null});
+        }
+    }
+
+    @Test
+    public void testFieldOrderPrediction()
+            throws Exception
+    {
+        JsonSerde serde = createSerde(true, false);
+        serde.deserialize(new Text("{\"messageId\": \"a\", \"unknown\": 1, \"messageparts\": [{\"size\": 1, \"extension\": \"x\"}]}"));
+        assertEquals(serde.getFieldOrderPredictionHits(), 0);
+        assertEquals(serde.getFieldOrderPredictionMisses(), 5);
+
+        serde.deserialize(new Text("{\"messageId\": \"b\", \"unknown\": 2, \"messageparts\": [{\"size\": 2, \"extension\": \"y\"}, {\"size\": 3}]}"));
+        assertEquals(serde.getFieldOrderPredictionHits(), 6);
+        assertEquals(serde.getFieldOrderPredictionMisses(), 5);
+
+        Object[] row = (Object[]) serde.deserialize(new Text("{\"messageparts\": [], \"messageid\": \"c\"}"));
+        assertEquals(row[0], "c");
+        assertEquals(serde.getFieldOrderPredictionHits(), 6);
+        assertEquals(serde.getFieldOrderPredictionMisses(), 7);
+    }
+
+    @Test
+    public void testErrorMessages()
+    {
+        for (boolean streaming : new boolean[] {false, true}) {
+            assertEquals(getErrorMessage(streaming, "{\"recipients\": 12345678901}"), "expected list, found LongNode for column recipients");
+            assertEquals(getErrorMessage(streaming, "{\"headers\": {\"a\": \"1\", \"A\": \"2\"}}"), "column headers case-insensitive map already contains key: A");
+            assertEquals(getErrorMessage(streaming, "{\"messageParts\": [{\"Extension\": [1]}]}"), "expected primitive, found ArrayNode for column messageparts.extension");
+            assertEquals(getErrorMessage(streaming, "{\"messageid\": "), "error parsing JSON: org.codehaus.jackson.JsonParseException");
+        }
+    }
+
+    private static List<Object> deserialize(boolean streaming, String json)
+            throws SerDeException
+    {
+        Object[] row = (Object[]) createSerde(streaming, false).deserialize(new Text(json));
+        return Arrays.asList(deepToList(row));
+    }
+
+    private static Object[] deepToList(Object[] row)
+    {
+        Object[] result = row.clone();
+        for (int i = 0; i < result.length; i++) {
+            if (result[i] instanceof Object[]) {
+                result[i] = Arrays.asList(deepToList((Object[]) result[i]));
+            }
+            else if (result[i] instanceof List) {
+                List<?> list = (List<?>) result[i];
+                Object[] items = list.toArray();
+                result[i] = Arrays.asList(deepToList(items));
+            }
+            else if (result[i] instanceof Map) {
+                result[i] = new LinkedHashMap<Object, Object>((Map<?, ?>) result[i]);
+            }
+        }
+        return result;
+    }
+
+    private static Object[] getBatchRow(RowBatch batch, int row)
+    {
+        List<Object> values = new ArrayList<Object>();
+        for (int i = 0; i < batch.getColumnCount(); i++) {
+            ColumnVector column = batch.getColumn(i);
+            if (column.isNull[row]) {
+                values.add(null);
+            }
+            else if (column instanceof ColumnVector.BytesColumnVector) {
+                values.add(((ColumnVector.BytesColumnVector) column).getString(row));
+            }
+            else if (column instanceof ColumnVector.ObjectColumnVector) {
+                values.add(((ColumnVector.ObjectColumnVector) column).vector[row]);
+            }
+            else if (i == 1) {
+                values.add((int) ((ColumnVector.LongColumnVector) column).vector[row]);
+            }
+            else if (i == 2) {
+                values.add(((ColumnVector.LongColumnVector) column).vector[row] != 0);
+            }
+            else {
+                values.add(((ColumnVector.DoubleColumnVector) column).vector[row]);
+            }
+        }
+        return values.toArray();
+    }
+
+    private static String getErrorMessage(boolean streaming, String json)
+    {
+        try {
+            return getErrorMessage(createSerde(streaming, false), json);
+        }
+        catch (SerDeException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private static String getErrorMessage(JsonSerde serde, String json)
+    {
+        try {
+            serde.deserialize(new Text(json));
+            fail("expected exception: " + json);
+        }
+        catch (SerDeException e) {
+            String message = e.getMessage();
+            if (e.getCause() != null) {
+                message += ": " + e.getCause().getClass().getName();
+            }
+            return message;
+        }
+        return null;
+    }
+
+    @Test
+    public void testMetrics()
+            throws Exception
+    {
+        Properties properties = createProperties(false, true);
+        properties.setProperty("filter.column", "messageId");
+        properties.setProperty("filter.values", "a");
+        properties.setProperty("metrics.timing.sample", "2");
+        JsonSerde serde = new JsonSerde();
+        serde.initialize(null, properties);
+
+        serde.deserialize(new Text("{\"messageid\": \"a\"}"));
+        serde.deserialize(new Text("{\"messageid\": \"a\", \"messagesize\": 5}"));
+        serde.deserialize(new Text("{\"messageid\": \"b\"}"));
+        serde.deserialize(new Text("{\"messageid\": \"a\", "));
+        serde.deserialize(new Text("{\"messageid\": \"a\", \"messagesize\": [5]}"));
+        serde.deserialize(new Text("{\"messageid\": \"a\", \"flag\": {}}"));
+        serde.deserialize(new Text("{\"messageid\": \"a\", \"flag\": []}"));
+
+        DecodeMetrics metrics = serde.getMetrics();
+        assertEquals(metrics.getRows(), 7);
+        assertEquals(metrics.getBytes(), 189);
+        assertEquals(metrics.getFilteredRows(), 1);
+        assertEquals(metrics.getParseErrors(), 1);
+        assertEquals(metrics.getTypeErrors(), 3);
+        assertEquals(metrics.getOtherErrors(), 0);
+        assertEquals(metrics.getIgnoredErrors(), 4);
+        Map<String, Long> columnErrors = new LinkedHashMap<String, Long>();
+        columnErrors.put("messagesize", 1L);
+        columnErrors.put("flag", 2L);
+        assertEquals(metrics.getTypeErrorsByColumn(), columnErrors);
+        assertEquals(metrics.getSampledRows(), 1);
+
+        assertEquals(getInitializeErrorMessage(createTimingProperties("-1")), "invalid timing sample interval: -1");
+        assertEquals(getInitializeErrorMessage(createTimingProperties("x")), "invalid timing sample interval: x");
+    }
+
+    @Test
+    public void testRecordLimits()
+            throws Exception
+    {
+        for (boolean streaming : new boolean[] {false, true}) {
+            Properties properties = createProperties(streaming, false);
+            properties.setProperty("limit.record.bytes", "100");
+            properties.setProperty("limit.depth", "2");
+            properties.setProperty("limit.array.length", "3");
+            properties.setProperty("limit.object.fields", "4");
+            JsonSerde serde = new JsonSerde();
+            serde.initialize(null, properties);
+
+            Object[] row = (Object[]) serde.deserialize(new Text("{\"messageid\": \"a\", \"recipients\": [\"x\", \"y\", \"z\"], \"headers\": {\"k\": \"v\"}}"));
+            assertEquals(row[0], "a");
+            assertEquals(row[4], Arrays.asList("x", "y", "z"));
+
+            assertEquals(getErrorMessage(serde, "{\"messageid\": \"" + new String(new char[100]).replace('\0', 'a') + "\"}"), "record size 117 exceeds limit 100");
+            assertEquals(getErrorMessage(serde, "{\"messageparts\": [{\"size\": 1}]}"), "nesting depth exceeds limit 2");
+            assertEquals(getErrorMessage(serde, "{\"recipients\": [\"w\", \"x\", \"y\", \"z\"]}"), "array length exceeds limit 3");
+            assertEquals(getErrorMessage(serde, "{\"headers\": {\"a\": \"1\", \"b\": \"2\", \"c\": \"3\", \"d\": \"4\", \"e\": \"5\"}}"), "object size exceeds limit 4");
+            assertEquals(getErrorMessage(serde, "{\"a\": 1, \"b\": 2, \"c\": 3, \"d\": 4, \"e\": 5}"), "object size exceeds limit 4");
+            assertEquals(getErrorMessage(serde, "{\"messageid\": \"a\", "), "error parsing JSON: org.codehaus.jackson.JsonParseException");
+
+            // skipped values are never built, so they are not counted
+            row = (Object[]) serde.deserialize(new Text("{\"messageid\": \"b\", \"other\": [[], [], [], [[1]]]}"));
+            assertEquals(row[0], "b");
+
+            // the decoders start each record at the top level after an error
+            assertEquals(((Object[]) serde.deserialize(new Text("{\"recipients\": [\"x\"]}")))[4], Arrays.asList("x"));
+        }
+
+        // lazy records are scanned before they are parsed
+        Properties lazyProperties = createProperties(false, false);
+        lazyProperties.setProperty("parse.lazy", "true");
+        lazyProperties.setProperty("limit.array.length", "3");
+        JsonSerde lazySerde = new JsonSerde();
+        lazySerde.initialize(null, lazyProperties);
+        assertEquals(getErrorMessage(lazySerde, "{\"other\": [[], [], [], [1]]}"), "array length exceeds limit 3");
+
+        Properties properties = createProperties(false, true);
+        properties.setProperty("limit.depth", "1");
+        JsonSerde serde = new JsonSerde();
+        serde.initialize(null, properties);
+        assertNull(serde.deserialize(new Text("{\"recipients\": []}")));
+        assertEquals(serde.getMetrics().getIgnoredErrors(), 1);
+
+        properties = createProperties(false, false);
+        properties.setProperty("limit.depth", "-1");
+        assertEquals(getInitializeErrorMessage(properties), "invalid nesting depth limit: -1");
+    }
+
+    @Test
+    public void testSmile()
+            throws Exception
+    {
+        String[] records = {
+                "{\"messageid\": \"a\", \"messagesize\": 1234567, \"flag\": true, \"ratio\": 0.25, \"recipients\": [\"x\", null], " +
+                        "\"messageparts\": [{\"extension\": \"txt\", \"size\": 5}, {\"extension\": \"pdf\"}], \"headers\": {\"a\": \"b\", \"c\": 1}}",
+                "{\"MessageId\": \"b\", \"messageSize\": \"7\", \"ratio\": 3, \"other\": {\"x\": [1, 2.5, \"y\"]}}",
+                "{\"messagesize\": [5]}",
+                "{\"flag\": {}}",
+                "[]",
+        };
+        for (boolean streaming : new boolean[] {false, true}) {
+            JsonSerde serde = createSerde(streaming, false);
+            for (String record : records) {
+                assertEquals(deserialize(serde, toSmile(record)), deserialize(serde, new Text(record)), record);
+            }
+
+            RowBatch batch = serde.createRowBatch(2);
+            serde.deserializeBatch(new BinaryComparable[] {toSmile(records[0]), new Text(records[1])}, 2, batch);
+            assertEquals(((ColumnVector.BytesColumnVector) batch.getColumn(0)).getString(0), "a");
+            assertEquals(((ColumnVector.BytesColumnVector) batch.getColumn(0)).getString(1), "b");
+        }
+
+        // the header may be omitted when the format is set
+        Properties properties = createProperties(true, false);
+        properties.setProperty("record.format", "smile");
+        JsonSerde serde = new JsonSerde();
+        serde.initialize(null, properties);
+        BytesWritable record = toSmile(records[1]);
+        BytesWritable headerless = new BytesWritable(Arrays.copyOfRange(record.getBytes(), 4, record.getLength()));
+        assertEquals(deserialize(serde, headerless), deserialize(serde, record));
+
+        properties = createProperties(false, false);
+        properties.setProperty("record.format", "json");
+        serde = new JsonSerde();
+        serde.initialize(null, properties);
+        assertEquals(deserialize(serde, record), "error parsing JSON");
+
+        properties = createProperties(false, false);
+        properties.setProperty("parse.lazy", "true");
+        serde = new JsonSerde();
+        serde.initialize(null, properties);
+        assertEquals(deserialize(serde, record), "Smile records are not supported with lazy parsing");
+        properties.setProperty("record.format", "smile");
+        assertEquals(getInitializeErrorMessage(properties), "Smile records are not supported with lazy parsing");
+        properties.setProperty("record.format", "xml");
+        assertEquals(getInitializeErrorMessage(properties), "invalid record format: xml");
+    }
+
+    private static Object deserialize(JsonSerde serde, Writable record)
+    {
+        try {
+            return copyToStandardObject(serde.deserialize(record), serde.getObjectInspector());
+        }
+        catch (SerDeException e) {
+            return e.getMessage();
+        }
+    }
+
+    /**
+     * Converts the JSON text to Smile, keeping any duplicate fields.
+     */
+    static BytesWritable toSmile(String json)
+            throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonParser parser = new JsonFactory().createJsonParser(json);
+        JsonGenerator generator = new SmileFactory().createJsonGenerator(out);
+        parser.nextToken();
+        generator.copyCurrentStructure(parser);
+        generator.close();
+        return new BytesWritable(out.toByteArray());
+    }
+
+    private static Properties createTimingProperties(String interval)
+    {
+        Properties properties = createProperties(false, false);
+        properties.setProperty("metrics.timing.sample", interval);
+        return properties;
+    }
+
+    private static JsonSerde createSerde(boolean streaming, boolean ignoreErrors)
+            throws SerDeException
+    {
+        JsonSerde serde = new JsonSerde();
+        serde.initialize(null, createProperties(streaming, ignoreErrors));
+        return serde;
+    }
+
+    private static Properties createProperties(boolean streaming, boolean ignoreErrors)
+    {
+        Properties properties = new Properties();
+        properties.setProperty(Constants.LIST_COLUMNS, COLUMNS);
+        properties.setProperty(Constants.LIST_COLUMN_TYPES, TYPES);
+        properties.setProperty("parse.streaming", String.valueOf(streaming));
+        properties.setProperty("errors.ignore", String.valueOf(ignoreErrors));
+        return properties;
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.mapred.Counters;
+import org.apache.hadoop.mapred.InputSplit;
+import org.apache.hadoop.mapred.Reporter;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.proofpoint.hive.serde.JsonSerdeMetrics.COUNTER_GROUP;
+import static com.proofpoint.hive.serde.JsonSerdeMetrics.MAX_TYPE_ERROR_COUNTERS;
+import static com.proofpoint.hive.serde.JsonSerdeMetrics.OTHER_COLUMNS_COUNTER;
+import static com.proofpoint.hive.serde.JsonSerdeMetrics.TYPE_ERROR_COUNTER_GROUP;
+import static org.testng.Assert.assertEquals;
+
+public class TestJsonSerdeMetrics
+{
+    @Test
+    public void testTypeErrorCounters()
+    {
+        JsonSerdeMetrics metrics = new JsonSerdeMetrics();
+        CountingReporter reporter = new CountingReporter();
+
+        int columns = MAX_TYPE_ERROR_COUNTERS + 10;
+        for (int i = 0; i < columns; i++) {
+            metrics.addTypeError("column" + i);
+        }
+        metrics.publishCounters(reporter);
+
+        Map<String, Long> typeErrors = reporter.getGroup(TYPE_ERROR_COUNTER_GROUP);
+        assertEquals(typeErrors.size(), MAX_TYPE_ERROR_COUNTERS + 1);
+        assertEquals(typeErrors.get(OTHER_COLUMNS_COUNTER).longValue(), 10L);
+        assertEquals(reporter.getGroup(COUNTER_GROUP).get("Type errors").longValue(), (long) columns);
+        assertEquals(metrics.getTypeErrorsByColumn().size(), columns);
+
+        // later errors go to the same counters, and only the deltas are published
+        for (int i = 0; i < columns; i++) {
+            metrics.addTypeError("column" + i);
+        }
+        metrics.addTypeError("another");
+        metrics.publishCounters(reporter);
+
+        assertEquals(typeErrors.size(), MAX_TYPE_ERROR_COUNTERS + 1);
+        assertEquals(typeErrors.get(OTHER_COLUMNS_COUNTER).longValue(), 21L);
+        long total = 0;
+        for (long value : typeErrors.values()) {
+            total += value;
+        }
+        assertEquals(total, 2L * columns + 1);
+        assertEquals(metrics.getTypeErrorsByColumn().size(), columns + 1);
+    }
+
+    private static class CountingReporter
+            implements Reporter
+    {
+        private final Map<String, Map<String, Long>> groups = new HashMap<String, Map<String, Long>>();
+
+        public Map<String, Long> getGroup(String group)
+        {
+            Map<String, Long> counters = groups.get(group);
+            if (counters == null) {
+                counters = new HashMap<String, Long>();
+                groups.put(group, counters);
+            }
+            return counters;
+        }
+
+        @Override
+        public void incrCounter(String group, String counter, long amount)
+        {
+            Map<String, Long> counters = getGroup(group);
+            Long value = counters.get(counter);
+            counters.put(counter, ((value == null) ? 0 : value) + amount);
+        }
+
+        @Override
+        public void incrCounter(Enum<?> key, long amount)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Counters.Counter getCounter(Enum<?> name)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public Counters.Counter getCounter(String group, String name)
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public InputSplit getInputSplit()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void setStatus(String status)
+        {
+        }
+
+        @Override
+        public void progress()
+        {
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2011 Proofpoint, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.proofpoint.hive.serde;
+
+import org.apache.hadoop.hive.serde.Constants;
+import org.apache.hadoop.hive.serde2.SerDeException;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapred.JobConf;
+import org.apache.hadoop.mapred.RecordReader;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestParallelJsonRecordReader
+{
+    @Test
+    public void testOrderAndResults()
+            throws Exception
+    {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            lines.add((i % 97 == 0) ? "{\"id\": " : String.format("{\"id\": %s, \"name\": \"n%s\", \"other\": [1, {}]}", i, i));
+        }
+
+        Properties properties = new Properties();
+        properties.setProperty(Constants.LIST_COLUMNS, "id,name");
+        properties.setProperty(Constants.LIST_COLUMN_TYPES, "int,string");
+        JsonSerde serde = new JsonSerde();
+        serde.initialize(null, properties);
+        JsonSerde expectedSerde = new JsonSerde();
+        expectedSerde.initialize(null, properties);
+
+        RecordReader<LongWritable, Text> reader = new ParallelJsonRecordReader(new ListRecordReader(lines), 4, 8);
+        LongWritable key = reader.createKey();
+        Text value = reader.createValue();
+        int decoded = 0;
+        for (int i = 0; i < lines.size(); i++) {
+            assertTrue(reader.next(key, value));
+            assertEquals(key.get(), i);
+            assertEquals(value.toString(), lines.get(i));
+            ParsedJsonText parsed = (ParsedJsonText) value;
+            if (parsed.getDecodedBy() != null) {
+                // decoded by the workers once the serde asked for it
+                assertTrue((parsed.getTree() == null) && (parsed.getError() == null));
+                decoded++;
+            }
+            else {
+                assertTrue((parsed.getTree() == null) != (parsed.getError() == null));
+            }
+            assertEquals(deserialize(serde, value), deserialize(expectedSerde, new Text(lines.get(i))));
+        }
+        assertFalse(reader.next(key, value));
+        reader.close();
+        // the lines read ahead before the first row were only parsed
+        assertEquals(decoded, lines.size() - 8);
+    }
+
+    @Test
+    public void testWorkerDecoding()
+            throws Exception
+    {
+        List<String> lines = Arrays.asList(
+                "{\"id\": 1, \"name\": \"a\", \"tags\": [\"x\"]}",
+                "{\"id\": 2, \"name\": \"b\", \"tags\": [\"y\", \"z\"]}",
+                "{\"id\": [3]}",
+                "{\"id\": ",
+                "{\"id\": 5, \"tags\": [\"a\", \"b\", \"c\"]}",
+                "{\"id\": 6, \"name\": \"f\"}");
+
+        for (boolean streaming : new boolean[] {false, true}) {
+            Properties properties = new Properties();
+            properties.setProperty(Constants.LIST_COLUMNS, "id,name,tags");
+            properties.setProperty(Constants.LIST_COLUMN_TYPES, "int,string,array<string>");
+            properties.setProperty("parse.streaming", String.valueOf(streaming));
+            properties.setProperty("limit.array.length", "2");
+            JsonSerde serde = new JsonSerde();
+            serde.initialize(null, properties);
+            JsonSerde expectedSerde = new JsonSerde();
+            expectedSerde.initialize(null, properties);
+
+            RecordReader<LongWritable, Text> reader = new ParallelJsonRecordReader(new ListRecordReader(lines), 2, 1);
+            LongWritable key = reader.createKey();
+            ParsedJsonText value = (ParsedJsonText) reader.createValue();
+            List<Boolean> decoded = new ArrayList<Boolean>();
+            while (reader.next(key, value)) {
+                decoded.add(value.getDecodedBy() != null);
+                assertEquals(deserialize(serde, value), deserialize(expectedSerde, new Text(value.toString())), value.toString());
+            }
+            reader.close();
+
+            // only the first line is read before the serde asks for decoding
+            assertEquals(decoded, Arrays.asList(false, true, true, true, true, true));
+            assertEquals(serde.getMetrics().getRows(), lines.size());
+            assertEquals(serde.getMetrics().getTypeErrors(), 1);
+            assertEquals(serde.getMetrics().getParseErrors(), 1);
+            assertEquals(serde.getMetrics().getOtherErrors(), 1);
+        }
+
+        // reused rows are not handed between threads
+        Properties properties = new Properties();
+        properties.setProperty(Constants.LIST_COLUMNS, "id");
+        properties.setProperty(Constants.LIST_COLUMN_TYPES, "int");
+        properties.setProperty("row.reuse", "true");
+        JsonSerde serde = new JsonSerde();
+        serde.initialize(null, properties);
+        RecordReader<LongWritable, Text> reader = new ParallelJsonRecordReader(new ListRecordReader(lines), 2, 1);
+        ParsedJsonText value = (ParsedJsonText) reader.createValue();
+        while (reader.next(reader.createKey(), value)) {
+            assertNull(value.getDecodedBy());
+            deserialize(serde, value);
+        }
+        reader.close();
+    }
+
+    @Test
+    public void testChangingTextDiscardsTree()
+            throws Exception
+    {
+        RecordReader<LongWritable, Text> reader = new ParallelJsonRecordReader(new ListRecordReader(Arrays.asList("{\"a\": 1}")), 1, 1);
+        ParsedJsonText value = (ParsedJsonText) reader.createValue();
+        assertTrue(reader.next(reader.createKey(), value));
+        assertNotNull(value.getTree());
+        value.set("{}");
+        assertNull(value.getTree());
+        reader.close();
+    }
+
+    @Test
+    public void testLimits()
+            throws Exception
+    {
+        List<String> lines = Arrays.asList(
+                "{\"id\": 1, \"tags\": [\"a\"]}",
+                "{\"id\": 2, \"name\": \"" + new String(new char[40]).replace('\0', 'n') + "\"}",
+                "{\"id\": 3, \"other\": [[[1]]]}",
+                "{\"id\": 4, \"tags\": [\"a\", \"b\", \"c\"]}",
+                "{\"id\": 5, \"tags\": [\"a\", \"b\"]}");
+
+        // the workers use the limits of the job
+        JobConf job = new JobConf(false);
+        job.setInt("limit.record.bytes", 50);
+        job.setInt("limit.depth", 3);
+        job.setInt("limit.array.length", 2);
+        RecordLimits limits = RecordLimits.create(job, ParallelJsonInputFormat.MAX_BYTES_CONF);
+
+        Properties properties = new Properties();
+        properties.setProperty(Constants.LIST_COLUMNS, "id,name,tags");
+        properties.setProperty(Constants.LIST_COLUMN_TYPES, "int,string,array<string>");
+        properties.setProperty("limit.record.bytes", "50");
+        properties.setProperty("limit.array.length", "1");
+        JsonSerde serde = new JsonSerde();
+        serde.initialize(null, properties);
+
+        RecordReader<LongWritable, Text> reader = new ParallelJsonRecordReader(new ListRecordReader(lines), 2, 4, Long.MAX_VALUE, limits);
+        LongWritable key = reader.createKey();
+        ParsedJsonText value = (ParsedJsonText) reader.createValue();
+        List<Boolean> parsed = new ArrayList<Boolean>();
+        List<Object> rows = new ArrayList<Object>();
+        while (reader.next(key, value)) {
+            assertNull(value.getError());
+            parsed.add(value.getTree() != null);
+            rows.add(deserialize(serde, value));
+            // keep building trees, to check the limits of the workers
+            value.setWorkerDecoding(null);
+        }
+        reader.close();
+
+        assertEquals(parsed, Arrays.asList(true, false, false, false, true));
+        assertEquals(rows, Arrays.<Object>asList(
+                Arrays.<Object>asList(1, null, Arrays.asList("a")),
+                "record size 61 exceeds limit 50",
+                Arrays.<Object>asList(3, null, null),
+                "array length exceeds limit 1",
+                "array length exceeds limit 1"));
+
+        // the job record size limit can be replaced for the workers
+        job.setInt(ParallelJsonInputFormat.MAX_BYTES_CONF, 100);
+        limits = RecordLimits.create(job, ParallelJsonInputFormat.MAX_BYTES_CONF);
+        limits.checkLength(100);
+    }
+
+    @Test
+    public void testQueueBytes()
+            throws Exception
+    {
+        List<String> lines = new ArrayList<String>();
+        for (int i = 0; i < 20; i++) {
+            lines.add(String.format("{\"id\": %2d}", i));
+        }
+
+        // each line is 10 bytes, so at most three are read ahead, or fewer
+        // once their trees are counted
+        RecordReader<LongWritable, Text> reader = new ParallelJsonRecordReader(new ListRecordReader(lines), 2, 100, 25, null);
+        LongWritable key = reader.createKey();
+        Text value = reader.createValue();
+        assertTrue(reader.next(key, value));
+        assertTrue(reader.getPos() <= 3);
+        assertTrue(reader.next(key, value));
+        assertTrue(reader.getPos() <= 4);
+        reader.close();
+
+        // a single line larger than the bound is still read
+        reader = new ParallelJsonRecordReader(new ListRecordReader(lines), 2, 100, 5, null);
+        for (int i = 0; i < lines.size(); i++) {
+            assertTrue(reader.next(key, value));
+            assertEquals(value.toString(), lines.get(i));
+            assertEquals(reader.getPos(), i + 1);
+        }
+        assertFalse(reader.next(key, value));
+        reader.close();
+    }
+
+    @Test
+    public void testEstimateTreeBytes()
+            throws Exception
+    {
+        JsonNode tree = new ObjectMapper().readTree("{\"id\": 1, \"tags\": [\"ab\", null]}");
+        // object, two entries with names, int, array of two, text, null
+        assertEquals(ParallelJsonRecordReader.estimateTreeBytes(tree), 64 + (48 + 56 + 4) + (48 + 56 + 8) + 24 + (64 + 16) + (24 + 56 + 4) + 24);
+    }
+
+    @Test
+    public void testSmileAndErrors()
+            throws Exception
+    {
+        BytesWritable smile = TestJsonSerde.toSmile("{\"id\": 1, \"name\": \"a\"}");
+        Text smileLine = new Text();
+        smileLine.set(smile.getBytes(), 0, smile.getLength());
+        StringBuilder nested = new StringBuilder();
+        for (int i = 0; i < 1000000; i++) {
+            nested.append('[');
+        }
+        List<Text> lines = Arrays.asList(smileLine, new Text("{\"id\": 2, \"x\": " + nested + "}"), new Text("{\"id\": 3}"));
+
+        Properties properties = new Properties();
+        properties.setProperty(Constants.LIST_COLUMNS, "id,name");
+        properties.setProperty(Constants.LIST_COLUMN_TYPES, "int,string");
+        JsonSerde serde = new JsonSerde();
+        serde.initialize(null, properties);
+
+        RecordReader<LongWritable, Text> reader = new ParallelJsonRecordReader(new ListRecordReader(lines.iterator()), 2, 4);
+        LongWritable key = reader.createKey();
+        ParsedJsonText value = (ParsedJsonText) reader.createValue();
+
+        // Smile records are left for the serde
+        assertTrue(reader.next(key, value));
+        assertNull(value.getTree());
+        assertNull(value.getError());
+        assertEquals(deserialize(serde, value), Arrays.<Object>asList(1, "a"));
+
+        // an error in the worker is reported for the line
+        assertTrue(reader.next(key, value));
+        assertTrue(value.getError().getCause() instanceof StackOverflowError);
+        assertEquals(deserialize(serde, value), "error parsing JSON");
+
+        assertTrue(reader.next(key, value));
+        assertEquals(deserialize(serde, value), Arrays.<Object>asList(3, null));
+        assertFalse(reader.next(key, value));
+        reader.close();
+    }
+
+    private static Object deserialize(JsonSerde serde, Text text)
+    {
+        try {
+            return Arrays.asList((Object[]) serde.deserialize(text));
+        }
+        catch (SerDeException e) {
+            return e.getMessage();
+        }
+    }
+
+    private static class ListRecordReader
+            implements RecordReader<LongWritable, Text>
+    {
+        private final Iterator<Text> lines;
+        private long position;
+
+        private ListRecordReader(List<String> lines)
+        {
+            this(toText(lines).iterator());
+        }
+
+        private ListRecordReader(Iterator<Text> lines)
+        {
+            this.lines = lines;
+        }
+
+        private static List<Text> toText(List<String> lines)
+        {
+            List<Text> text = new ArrayList<Text>();
+            for (String line : lines) {
+                text.add(new Text(line));
+            }
+            return text;
+        }
+
+        @Override
+        public boolean next(LongWritable key, Text value)
+        {
+            if (!lines.hasNext()) {
+                return false;
+            }
+            key.set(position);
+            position++;
+            value.clear();
+            Text line = lines.next();
+            value.append(line.getBytes(), 0, line.getLength());
+            return true;
+        }
+
+        @Override
+        public LongWritable createKey()
+        {
+            return new LongWritable();
+        }
+
+        @Override
+        public Text createValue()
+        {
+            return new Text();
+        }
+
+        @Override
+        public long getPos()
+        {
+            return position;
+        }
+
+        @Override
+        public float getProgress()
+        {
+            return lines.hasNext() ? 0.0f : 1.0f;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}